@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import monasca.common.model.alarm.AlarmExpression;
+import monasca.common.model.alarm.AlarmSubExpression;
+
+/**
+ * Benchmarks parsing and evaluating alarm expressions and sub-expressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlarmExpressionBenchmark {
+  static final String EXPRESSION = "avg(hpcs.compute{instance_id=5,metric_name=cpu,device=1}, 1) "
+      + "> 5 times 3 and avg(hpcs.compute{flavor_id=3,metric_name=mem}, 2) < 4 times 3 "
+      + "or max(hpcs.compute{instance_id=5,metric_name=disk}) >= 90";
+  static final String SUB_EXPRESSION =
+      "avg(hpcs.compute{instance_id=5,metric_name=cpu,device=1}, 1) > 5 times 3";
+
+  private AlarmExpression expression;
+  private AlarmSubExpression subExpression;
+  private Map<AlarmSubExpression, Boolean> subExpressionValues;
+
+  @Setup
+  public void setup() {
+    expression = AlarmExpression.of(EXPRESSION);
+    subExpression = AlarmSubExpression.of(SUB_EXPRESSION);
+    subExpressionValues = new HashMap<>();
+    List<AlarmSubExpression> subExpressions = expression.getSubExpressions();
+    for (int i = 0; i < subExpressions.size(); i++)
+      subExpressionValues.put(subExpressions.get(i), i % 2 == 0);
+  }
+
+  @Benchmark
+  public AlarmExpression parseExpression() {
+    return AlarmExpression.of(EXPRESSION);
+  }
+
+  @Benchmark
+  public AlarmSubExpression parseSubExpression() {
+    return AlarmSubExpression.of(SUB_EXPRESSION);
+  }
+
+  @Benchmark
+  public boolean evaluateExpression() {
+    return expression.evaluate(subExpressionValues);
+  }
+
+  @Benchmark
+  public boolean evaluateSubExpression() {
+    return subExpression.evaluate(7.5);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import monasca.common.persistence.BeanMapper;
+
+/**
+ * Benchmarks mapping a result set row to a bean with {@link BeanMapper}. The row is served from
+ * memory so that only the mapping itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanMapperBenchmark {
+  private static final String[] COLUMNS = {"ID", "TENANT_ID", "NAME", "SEVERITY",
+      "ACTIONS_ENABLED", "PERIOD", "THRESHOLD", "CREATED_AT"};
+  private static final int[] COLUMN_TYPES = {Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+      Types.VARCHAR, Types.BOOLEAN, Types.INTEGER, Types.DOUBLE, Types.TIMESTAMP};
+  private static final Object[] ROW = {"8a5f3c2e-1b7d-4e0a-9c6f-2d4b8e1a7f30",
+      "5f0d9a7e3c1b4e2a8d6f0b9c7a5e3d1f", "cpu alarm", "HIGH", Boolean.TRUE, 60, 90.0d,
+      new Timestamp(1404254321000L)};
+
+  public static class AlarmDefinitionRow {
+    private String id;
+    private String tenantId;
+    private String name;
+    private String severity;
+    private boolean actionsEnabled;
+    private int period;
+    private double threshold;
+    private long createdAt;
+
+    public String getId() {
+      return id;
+    }
+
+    public void setId(String id) {
+      this.id = id;
+    }
+
+    public String getTenantId() {
+      return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+      this.tenantId = tenantId;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getSeverity() {
+      return severity;
+    }
+
+    public void setSeverity(String severity) {
+      this.severity = severity;
+    }
+
+    public boolean isActionsEnabled() {
+      return actionsEnabled;
+    }
+
+    public void setActionsEnabled(boolean actionsEnabled) {
+      this.actionsEnabled = actionsEnabled;
+    }
+
+    public int getPeriod() {
+      return period;
+    }
+
+    public void setPeriod(int period) {
+      this.period = period;
+    }
+
+    public double getThreshold() {
+      return threshold;
+    }
+
+    public void setThreshold(double threshold) {
+      this.threshold = threshold;
+    }
+
+    public long getCreatedAt() {
+      return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+      this.createdAt = createdAt;
+    }
+  }
+
+  private BeanMapper<AlarmDefinitionRow> mapper;
+  private ResultSet resultSet;
+
+  @Setup
+  public void setup() {
+    mapper = new BeanMapper<>(AlarmDefinitionRow.class);
+    resultSet = resultSetOf(COLUMNS, COLUMN_TYPES, ROW);
+  }
+
+  @Benchmark
+  public AlarmDefinitionRow map() throws SQLException {
+    return mapper.map(0, resultSet, null);
+  }
+
+  /** Returns a single row result set positioned on the {@code row}. */
+  static ResultSet resultSetOf(final String[] columns, final int[] columnTypes,
+      final Object[] row) {
+    final ResultSetMetaData metadata = proxy(ResultSetMetaData.class, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+          case "getColumnCount":
+            return columns.length;
+          case "getColumnLabel":
+          case "getColumnName":
+            return columns[(Integer) args[0] - 1];
+          case "getColumnType":
+            return columnTypes[(Integer) args[0] - 1];
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      }
+    });
+
+    return proxy(ResultSet.class, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getMetaData".equals(method.getName()))
+          return metadata;
+        if ("wasNull".equals(method.getName()))
+          return false;
+        if (method.getName().startsWith("get") && args != null && args[0] instanceof Integer)
+          return row[(Integer) args[0] - 1];
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(BeanMapperBenchmark.class.getClassLoader(),
+        new Class<?>[] {type}, handler));
+  }
+}
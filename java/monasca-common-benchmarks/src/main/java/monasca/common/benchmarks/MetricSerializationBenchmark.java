@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import monasca.common.model.metric.Metric;
+import monasca.common.model.metric.MetricEnvelope;
+import monasca.common.model.metric.MetricEnvelopes;
+import monasca.common.model.metric.Metrics;
+
+/**
+ * Benchmarks the JSON codecs for {@link Metric} and {@link MetricEnvelope}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricSerializationBenchmark {
+  private Metric metric;
+  private byte[] metricJson;
+  private MetricEnvelope envelope;
+  private byte[] envelopeJson;
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setup() {
+    Map<String, String> dimensions = new HashMap<>();
+    dimensions.put("hostname", "devstack-compute-1");
+    dimensions.put("service", "compute");
+    dimensions.put("component", "nova-compute");
+    dimensions.put("instance_id", "8a5f3c2e-1b7d-4e0a-9c6f-2d4b8e1a7f30");
+    metric = new Metric("cpu.idle_perc", dimensions, 1404254321L, 97.5);
+    metricJson = Metrics.toJsonBytes(metric);
+
+    Map<String, Object> meta = new HashMap<>();
+    meta.put("tenantId", "5f0d9a7e3c1b4e2a8d6f0b9c7a5e3d1f");
+    meta.put("region", "useast");
+    envelope = new MetricEnvelope(metric, meta);
+    envelopeJson = MetricEnvelopes.toJsonBytes(envelope);
+    buffer = ByteBuffer.allocate(4096);
+  }
+
+  @Benchmark
+  public Metric metricFromJson() {
+    return Metrics.fromJson(metricJson);
+  }
+
+  @Benchmark
+  public String metricToJson() {
+    return Metrics.toJson(metric);
+  }
+
+  @Benchmark
+  public byte[] metricToJsonBytes() {
+    return Metrics.toJsonBytes(metric);
+  }
+
+  @Benchmark
+  public int metricWriteToBuffer() {
+    buffer.clear();
+    return Metrics.writeTo(metric, buffer);
+  }
+
+  @Benchmark
+  public MetricEnvelope envelopeFromJson() {
+    return MetricEnvelopes.fromJson(envelopeJson);
+  }
+
+  @Benchmark
+  public String envelopeViewTenantId() {
+    return MetricEnvelopes.viewOf(envelopeJson).tenantId();
+  }
+
+  @Benchmark
+  public String envelopeToJson() {
+    return MetricEnvelopes.toJson(envelope);
+  }
+
+  @Benchmark
+  public byte[] envelopeToJsonBytes() {
+    return MetricEnvelopes.toJsonBytes(envelope);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import monasca.common.util.Serialization;
+
+/**
+ * Benchmarks the root-wrapped JSON serialization of {@link Serialization}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+  public static class CreateInstanceCommand {
+    public String uuid;
+    public String tenantId;
+    public int flavorId;
+    public boolean enabled;
+
+    public CreateInstanceCommand() {
+    }
+
+    CreateInstanceCommand(String uuid, String tenantId, int flavorId, boolean enabled) {
+      this.uuid = uuid;
+      this.tenantId = tenantId;
+      this.flavorId = flavorId;
+      this.enabled = enabled;
+    }
+  }
+
+  private CreateInstanceCommand command;
+  private String json;
+  private byte[] jsonBytes;
+  private JsonNode node;
+
+  @Setup
+  public void setup() {
+    Serialization.registerTarget(CreateInstanceCommand.class);
+    command = new CreateInstanceCommand("8a5f3c2e-1b7d-4e0a-9c6f-2d4b8e1a7f30",
+        "5f0d9a7e3c1b4e2a8d6f0b9c7a5e3d1f", 42, true);
+    json = Serialization.toJson(command);
+    jsonBytes = json.getBytes();
+    node = Serialization.toJsonNode(command);
+  }
+
+  @Benchmark
+  public String toJson() {
+    return Serialization.toJson(command);
+  }
+
+  @Benchmark
+  public JsonNode toJsonNode() {
+    return Serialization.toJsonNode(command);
+  }
+
+  @Benchmark
+  public Object fromJsonString() {
+    return Serialization.fromJson(json);
+  }
+
+  @Benchmark
+  public Object fromJsonBytes() {
+    return Serialization.fromJson(jsonBytes);
+  }
+
+  @Benchmark
+  public Object fromJsonNode() {
+    return Serialization.fromJson(node);
+  }
+}
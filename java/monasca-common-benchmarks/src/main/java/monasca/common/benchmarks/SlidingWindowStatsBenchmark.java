@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import monasca.common.util.stats.SlidingWindowStats;
+import monasca.common.util.stats.Statistic;
+import monasca.common.util.stats.Statistics;
+import monasca.common.util.time.TimeResolution;
+
+/**
+ * Benchmarks adding values to and sliding a {@link SlidingWindowStats}, and the {@link Statistics}
+ * implementations backing its slots.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingWindowStatsBenchmark {
+  private static final long SLOT_WIDTH = 60;
+  private static final int VIEW_SLOTS = 5;
+  private static final int FUTURE_SLOTS = 2;
+
+  @Param({"Average", "Count", "Max", "Min", "Sum"})
+  public String statistic;
+
+  private Class<? extends Statistic<Double>> statType;
+  private SlidingWindowStats<Double> window;
+  private Statistic<Double> stat;
+  private long viewEnd;
+  private long timestamp;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() throws Exception {
+    statType = (Class<? extends Statistic<Double>>) Class.forName(Statistics.class.getName() + "$"
+        + statistic);
+    viewEnd = 10000;
+    window = new SlidingWindowStats<>(statType, TimeResolution.ABSOLUTE, SLOT_WIDTH, VIEW_SLOTS,
+        FUTURE_SLOTS, viewEnd);
+    stat = statType.getDeclaredConstructor().newInstance();
+  }
+
+  /** Adds values that fall across the window's view slots. */
+  @Benchmark
+  public boolean addValue() {
+    timestamp = (timestamp + 7) % (VIEW_SLOTS * SLOT_WIDTH);
+    return window.addValue(12.5, viewEnd - timestamp - 1);
+  }
+
+  /** Slides the window one slot forward, recycling the oldest slot. */
+  @Benchmark
+  public void slideViewTo() {
+    viewEnd += SLOT_WIDTH;
+    window.slideViewTo(viewEnd);
+  }
+
+  /** Adds a value to and reads the statistic outside of a window. */
+  @Benchmark
+  public void statistic(Blackhole blackhole) {
+    stat.addValue(12.5);
+    blackhole.consume(stat.value());
+  }
+}
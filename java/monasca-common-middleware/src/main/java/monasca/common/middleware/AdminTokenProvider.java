@@ -0,0 +1,305 @@
+package monasca.common.middleware;
+
+import static monasca.common.middleware.AuthConstants.AUTH_SUBJECT_TOKEN;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Provides the admin token used to validate tokens, shared by all pooled {@link HttpAuthClient}s.
+ * <p/>
+ * The token and its parsed expiry are held together. Only one request for a new token is made at
+ * a time: callers that find the token expired while it is being fetched wait for that fetch rather
+ * than making their own. Once a token has been fetched, a replacement is fetched in the background
+ * ahead of its expiry, so request threads only fetch the first token or one that could not be
+ * refreshed in time. A token whose expiry can't be read is used for a short fallback lifetime
+ * and then fetched again on demand.
+ */
+public class AdminTokenProvider {
+  private static final Logger logger = LoggerFactory.getLogger(AdminTokenProvider.class);
+
+  private static final String PASSWORD = "password";
+  /** Tokens are treated as expired this long before their actual expiry */
+  private static final long EXPIRY_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  /** The longest a token is refreshed ahead of its expiry */
+  private static final long MAX_REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  /** The delay before retrying a failed background refresh */
+  private static final long REFRESH_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  /** The time a token whose expiry can't be read is used for */
+  static final long UNKNOWN_EXPIRY_LIFETIME_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+  private final Config appConfig = Config.getInstance();
+  private final HttpClient client;
+  private final URI uri;
+  private final ScheduledExecutorService scheduler;
+  private final Ticker ticker;
+  private volatile AdminToken current;
+
+  private final AtomicLong fetchCount = new AtomicLong();
+  private final AtomicLong refreshFailureCount = new AtomicLong();
+
+  /** An admin token and the time at which it should no longer be used. */
+  private static final class AdminToken {
+    final String value;
+    /** Milliseconds since the epoch, less the expiry margin */
+    final long expiresAt;
+    final long fetchedAt;
+    /** Whether the expiry was read from the token, so it can be refreshed ahead of it */
+    final boolean expiryKnown;
+
+    AdminToken(String value, long expiresAt, long fetchedAt, boolean expiryKnown) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.fetchedAt = fetchedAt;
+      this.expiryKnown = expiryKnown;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+  }
+
+  public AdminTokenProvider(HttpClient client, URI uri) {
+    this(client, uri, TokenCache.WALL_CLOCK);
+  }
+
+  AdminTokenProvider(HttpClient client, URI uri, Ticker ticker) {
+    this.client = client;
+    this.uri = uri;
+    this.ticker = ticker;
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+      new ThreadFactoryBuilder().setNameFormat("admin-token-refresh-%d").setDaemon(true).build());
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    scheduler = executor;
+  }
+
+  /**
+   * Returns an unexpired admin token, fetching one if necessary.
+   */
+  public String getToken() throws ClientProtocolException {
+    AdminToken token = current;
+    if (token != null && !token.isExpired(now()))
+      return token.value;
+    return refresh(token).value;
+  }
+
+  /**
+   * Discards the {@code token} if it is the current admin token, so that the next caller fetches a
+   * new one.
+   */
+  public synchronized void invalidate(String token) {
+    if (current != null && current.value.equals(token))
+      current = null;
+  }
+
+  /**
+   * Returns the number of admin tokens fetched.
+   */
+  public long getFetchCount() {
+    return fetchCount.get();
+  }
+
+  /**
+   * Returns the number of background refreshes that failed.
+   */
+  public long getRefreshFailureCount() {
+    return refreshFailureCount.get();
+  }
+
+  /**
+   * Stops refreshing the admin token in the background.
+   */
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Fetches a new token to replace {@code stale}, unless another caller already replaced it.
+   */
+  private synchronized AdminToken refresh(AdminToken stale) throws ClientProtocolException {
+    AdminToken token = current;
+    if (token != stale && token != null && !token.isExpired(now()))
+      return token;
+    token = fetch();
+    current = token;
+    scheduleRefresh(token);
+    return token;
+  }
+
+  private void scheduleRefresh(final AdminToken token) {
+    long lifetime = token.expiresAt - token.fetchedAt;
+    if (lifetime <= 0 || !token.expiryKnown)
+      return;
+    long delay = lifetime - Math.min(MAX_REFRESH_AHEAD_MILLIS, lifetime / 2);
+    schedule(token, delay);
+  }
+
+  private void schedule(final AdminToken token, long delay) {
+    try {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          if (current != token)
+            return;
+          try {
+            refresh(token);
+          } catch (Exception e) {
+            refreshFailureCount.incrementAndGet();
+            logger.warn("Failed to refresh admin token: {}", e.getMessage());
+            if (!token.isExpired(now() + REFRESH_RETRY_MILLIS))
+              schedule(token, REFRESH_RETRY_MILLIS);
+          }
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      logger.debug("Admin token refresh not scheduled: {}", e.getMessage());
+    }
+  }
+
+  private AdminToken fetch() throws ClientProtocolException {
+    fetchCount.incrementAndGet();
+    long now = now();
+    JsonParser jp = new JsonParser();
+    String value;
+    String expires;
+    if (appConfig.getAuthVersion().equalsIgnoreCase("v2.0")) {
+      HttpResponse response = sendPost(uri + "/v2.0/tokens", getUnscopedV2AdminTokenRequest());
+      String json = HttpAuthClient.parseResponse(response);
+      JsonObject token = jp.parse(json).getAsJsonObject().get("access").getAsJsonObject()
+        .get("token").getAsJsonObject();
+      value = token.get("id").getAsString();
+      expires = token.get("expires").getAsString();
+    } else {
+      HttpResponse response = sendPost(uri + "/v3/auth/tokens", getUnscopedV3AdminTokenRequest());
+      value = response.getFirstHeader(AUTH_SUBJECT_TOKEN).getValue();
+      String json = HttpAuthClient.parseResponse(response);
+      JsonObject token = jp.parse(json).getAsJsonObject().get("token").getAsJsonObject();
+      expires = token.get("expires_at").getAsString();
+    }
+
+    // The date looks like: 2014-11-13T02:34:59.953729Z
+    long expiresAt = TokenExpiry.parse(expires);
+    if (expiresAt == TokenExpiry.UNKNOWN) {
+      logger.warn("Failure parsing Admin Token expiration date: {}", expires);
+      return new AdminToken(value, now + UNKNOWN_EXPIRY_LIFETIME_MILLIS, now, false);
+    }
+    return new AdminToken(value, expiresAt - EXPIRY_MARGIN_MILLIS, now, true);
+  }
+
+  /**
+   * Returns the current time in milliseconds since the epoch.
+   */
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+  }
+
+  private HttpResponse sendPost(String uri, StringEntity body) throws ClientProtocolException {
+    HttpResponse response = null;
+    HttpPost post = new HttpPost(uri);
+    post.setHeader("Accept", "application/json");
+    post.setHeader("Content-Type", "application/json");
+    try {
+      post.setEntity(body);
+      response = client.execute(post);
+      int code = response.getStatusLine().getStatusCode();
+      if (!(code == 201 || code == 200 || code == 203)) {
+        throw new AdminAuthException("Failed to authenticate admin credentials " + code
+          + response.getStatusLine().getReasonPhrase());
+      }
+    } catch (IOException e) {
+      final String message;
+      if ((e.getMessage() == null) && (e.getCause() != null)) {
+        message = e.getCause().getMessage();
+      } else {
+        message = e.getMessage();
+      }
+      logger.error("Failure authenticating adminUser: {}", message);
+      post.abort();
+      throw new AdminAuthException("Failure authenticating adminUser :" + message, e);
+    }
+    return response;
+  }
+
+  private StringEntity getUnscopedV2AdminTokenRequest() {
+    StringBuffer bfr = new StringBuffer();
+    if (appConfig.getAdminAuthMethod().equalsIgnoreCase(PASSWORD)) {
+      bfr.append("{\"auth\": {\"passwordCredentials\": {\"username\": \"");
+      bfr.append(appConfig.getAdminUser());
+      bfr.append("\",\"password\": \"");
+      bfr.append(appConfig.getAdminPassword());
+      if (appConfig.getAdminProject() != null && !appConfig.getAdminProject().isEmpty()) {
+        bfr.append("\"}, \"tenantId\": \"");
+        bfr.append(appConfig.getAdminProject());
+        bfr.append("\"}}");
+      } else {
+        bfr.append("\"}}}");
+      }
+      try {
+        return new StringEntity(bfr.toString());
+      } catch (UnsupportedEncodingException e) {
+        throw new AdminAuthException("Invalid V2 authentication request " + e);
+      }
+    } else {
+      String msg = String.format("Admin auth method %s not supported",
+        appConfig.getAdminAuthMethod());
+      throw new AdminAuthException(msg);
+    }
+  }
+
+  private String buildAuth(final String userName, final String password) {
+    final JsonObject domain = new JsonObject();
+    domain.addProperty("id", "default");
+    final JsonObject user = new JsonObject();
+    user.addProperty("name", userName);
+    user.addProperty("password", password);
+    user.add("domain", domain);
+    final JsonArray methods = new JsonArray();
+    final JsonObject passwordHolder = new JsonObject();
+    passwordHolder.add("user", user);
+    methods.add(new JsonPrimitive("password"));
+    final JsonObject identity = new JsonObject();
+    identity.add("methods", methods);
+    identity.add("password", passwordHolder);
+    final JsonObject auth = new JsonObject();
+    auth.add("identity", identity);
+    final JsonObject outer = new JsonObject();
+    outer.add("auth", auth);
+    return outer.toString();
+  }
+
+  private StringEntity getUnscopedV3AdminTokenRequest() {
+    final String body;
+    if (appConfig.getAdminAuthMethod().equalsIgnoreCase(PASSWORD)) {
+      body = buildAuth(appConfig.getAdminUser(), appConfig.getAdminPassword());
+    } else {
+      String msg = String.format("Admin auth method %s not supported",
+        appConfig.getAdminAuthMethod());
+      throw new AdminAuthException(msg);
+    }
+    try {
+      return new StringEntity(body);
+    } catch (UnsupportedEncodingException e) {
+      throw new AdminAuthException("Invalid V3 authentication request " + e);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package monasca.common.middleware;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Validates tokens off the container's request threads using Servlet 3 asynchronous processing.
+ * The request is suspended while its token is validated on a small pool of validation threads.
+ * Once the token is validated the request is dispatched back through the filter with the result
+ * in the {@link #VALIDATION_RESULT} request attribute, so the filter must also be mapped with
+ * {@code <dispatcher>ASYNC</dispatcher>}. A failed validation is answered directly and the request
+ * completed without being dispatched.
+ * <p/>
+ * Concurrent validations of the same token share a single validation, and retries after
+ * connection failures are scheduled rather than slept, so neither occupies a thread while waiting.
+ */
+public class AsyncTokenValidator {
+  /** Request attribute holding the validated token */
+  static final String VALIDATION_RESULT = AsyncTokenValidator.class.getName() + ".result";
+
+  private static final Logger logger = LoggerFactory.getLogger(AsyncTokenValidator.class);
+
+  private final ScheduledExecutorService executor;
+  private final int retries;
+  private final RetryBackoff backoff;
+  private final ConcurrentMap<String, ListenableFuture<Object>> inFlight =
+    new ConcurrentHashMap<>();
+
+  private final AtomicLong validationCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * @param threads    the number of validation threads
+   * @param retries    the number of times to retry a validation that failed to connect
+   * @param backoff    the delay between retries
+   */
+  public AsyncTokenValidator(int threads, int retries, RetryBackoff backoff) {
+    this.retries = retries;
+    this.backoff = backoff;
+    executor = Executors.newScheduledThreadPool(Math.max(1, threads),
+      new ThreadFactoryBuilder().setNameFormat("token-validation-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Suspends the request and validates the {@code token}, dispatching the request back to the
+   * container once validation succeeds or responding with the error once it fails.
+   */
+  public void validate(final String token, ServletRequest req, ServletResponse resp) {
+    final AsyncContext asyncContext = req.startAsync(req, resp);
+    Futures.addCallback(validate(token), new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object result) {
+        dispatch(asyncContext, result);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        fail(asyncContext, t, token);
+      }
+    });
+  }
+
+  /**
+   * Returns the validation of the {@code token}, joining the validation already in flight for the
+   * token if there is one.
+   */
+  public ListenableFuture<Object> validate(final String token) {
+    final SettableFuture<Object> future = SettableFuture.create();
+    ListenableFuture<Object> existing = inFlight.putIfAbsent(token, future);
+    if (existing != null) {
+      coalescedCount.incrementAndGet();
+      return existing;
+    }
+
+    validationCount.incrementAndGet();
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        inFlight.remove(token, future);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    attempt(token, future, 0, 0);
+    return future;
+  }
+
+  /**
+   * Returns the number of validations started.
+   */
+  public long getValidationCount() {
+    return validationCount.get();
+  }
+
+  /**
+   * Returns the number of requests that joined a validation already in flight.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * Stops validating tokens.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void attempt(final String token, final SettableFuture<Object> future,
+    final int attempt, long delay) {
+    Runnable validation = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.set(FilterUtils.getCachedToken(token));
+        } catch (Throwable t) {
+          if (!TokenAuth.isRetryable(t)) {
+            future.setException(t);
+          } else if (attempt < retries) {
+            long pauseTime = backoff.delay(attempt);
+            logger.debug("Retrying connection after " + pauseTime + " milliseconds.");
+            attempt(token, future, attempt + 1, pauseTime);
+          } else {
+            logger.debug("Exhausted retries..");
+            future.setException(t);
+          }
+        }
+      }
+    };
+
+    try {
+      executor.schedule(validation, delay, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      // Rejected after shutdown
+      future.setException(e);
+    }
+  }
+
+  private static void dispatch(AsyncContext asyncContext, Object result) {
+    try {
+      asyncContext.getRequest().setAttribute(VALIDATION_RESULT, result);
+      asyncContext.dispatch();
+    } catch (IllegalStateException e) {
+      // The request completed or timed out while its token was being validated
+      logger.debug("Unable to dispatch request after token validation", e);
+    }
+  }
+
+  private static void fail(AsyncContext asyncContext, Throwable t, String token) {
+    try {
+      TokenAuth.onValidationFailure(t, asyncContext.getResponse(), token);
+      asyncContext.complete();
+    } catch (IllegalStateException e) {
+      // The request completed or timed out while its token was being validated
+      logger.debug("Unable to respond to request after failed token validation", e);
+    }
+  }
+}
@@ -119,6 +119,54 @@ public interface AuthConstants {
   // ============================== CACHING ==================================
   public static final String TIME_TO_CACHE_TOKEN = "TimeToCacheToken";
   public static final String MAX_TOKEN_CACHE_SIZE = "MaxTokenCacheSize";
+  /**
+   * The maximum estimated bytes held by cached tokens, counting only what each token holds apart
+   * from values shared with other tokens, such as roles and the service catalog. 0, the default,
+   * bounds the cache by {@link #MAX_TOKEN_CACHE_SIZE} instead.
+   */
+  public static final String MAX_TOKEN_CACHE_BYTES = "MaxTokenCacheBytes";
+  /**
+   * Seconds before a cached token expires within which a request triggers a background
+   * revalidation. 0 disables refresh-ahead.
+   */
+  public static final String TOKEN_REFRESH_AHEAD_TIME = "TokenRefreshAheadTime";
+  /**
+   * Number of threads revalidating cached tokens in the background
+   */
+  public static final String TOKEN_REFRESH_THREADS = "TokenRefreshThreads";
+  /**
+   * Seconds after a cached token expires for which it is still served while Keystone cannot be
+   * reached. 0 disables serving stale tokens.
+   */
+  public static final String TOKEN_STALE_IF_ERROR_TIME = "TokenStaleIfErrorTime";
+  /**
+   * Seconds to remember tokens rejected by the authentication server. 0 disables the cache.
+   */
+  public static final String TIME_TO_CACHE_INVALID_TOKEN = "TimeToCacheInvalidToken";
+  public static final String MAX_INVALID_TOKEN_CACHE_SIZE = "MaxInvalidTokenCacheSize";
+
+  /**
+   * Seconds between polls of the authentication server's token revocation events, which discard
+   * revoked tokens from the cache. 0 disables polling. Requires v3.
+   */
+  public static final String REVOCATION_POLL_INTERVAL = "RevocationPollInterval";
+  /**
+   * Class name of a {@link LocalTokenValidator} to validate tokens before the authentication server
+   */
+  public static final String LOCAL_TOKEN_VALIDATOR = "LocalTokenValidator";
+  /**
+   * Directory of Keystone's Fernet keys, for the {@link FernetTokenValidator}
+   */
+  public static final String FERNET_KEY_REPOSITORY = "FernetKeyRepository";
+  /**
+   * Seconds for which Fernet tokens are valid after being issued. Used only if a token's payload
+   * doesn't have an expiry.
+   */
+  public static final String FERNET_TOKEN_TTL = "FernetTokenTtl";
+  /**
+   * Seconds between checks of the Fernet key repository for rotated keys
+   */
+  public static final String FERNET_KEY_CHECK_INTERVAL = "FernetKeyCheckInterval";
 
   /**
    * Number of connection timeout retries *
@@ -128,6 +176,42 @@ public interface AuthConstants {
    * Number of connection timeout retries *
    */
   public static final String PAUSE_BETWEEN_RETRIES = "ConnRetryInterval";
+  /**
+   * Maximum milliseconds between retries, which back off exponentially with jitter from
+   * ConnRetryInterval
+   */
+  public static final String MAX_PAUSE_BETWEEN_RETRIES = "ConnRetryMaxInterval";
+  /**
+   * Percentage of failed calls to the authentication server at which the circuit breaker opens.
+   * 0, the default, disables the circuit breaker.
+   */
+  public static final String CIRCUIT_BREAKER_FAILURE_RATE = "CircuitBreakerFailureRate";
+  /**
+   * Number of most recent calls over which the failure rate is measured
+   */
+  public static final String CIRCUIT_BREAKER_WINDOW_SIZE = "CircuitBreakerWindowSize";
+  /**
+   * Number of calls measured before the circuit breaker can open
+   */
+  public static final String CIRCUIT_BREAKER_MINIMUM_CALLS = "CircuitBreakerMinimumCalls";
+  /**
+   * Milliseconds the circuit breaker stays open before trial calls are let through
+   */
+  public static final String CIRCUIT_BREAKER_OPEN_TIME = "CircuitBreakerOpenTime";
+  /**
+   * Number of trial calls that must succeed to close the circuit breaker
+   */
+  public static final String CIRCUIT_BREAKER_HALF_OPEN_CALLS = "CircuitBreakerHalfOpenCalls";
+  /**
+   * Validate tokens asynchronously, freeing the request thread while validation is in flight.
+   * Requires a Servlet 3 container and the filter to be mapped with async-supported and with
+   * {@code <dispatcher>ASYNC</dispatcher>}, as validated requests are dispatched back through it.
+   */
+  public static final String ASYNC_VALIDATION = "AsyncValidation";
+  /**
+   * Number of threads validating tokens in async mode
+   */
+  public static final String ASYNC_VALIDATION_THREADS = "AsyncValidationThreads";
   /**
    * Authentication decision is forwarded to next filter *
    */
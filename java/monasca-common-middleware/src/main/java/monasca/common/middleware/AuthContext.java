@@ -0,0 +1,303 @@
+package monasca.common.middleware;
+
+import static monasca.common.middleware.AuthConstants.AUTH_DOMAIN_ID;
+import static monasca.common.middleware.AuthConstants.AUTH_DOMAIN_NAME;
+import static monasca.common.middleware.AuthConstants.AUTH_HP_IDM_ROLES;
+import static monasca.common.middleware.AuthConstants.AUTH_PROJECT_DOMAIN_ID;
+import static monasca.common.middleware.AuthConstants.AUTH_PROJECT_DOMAIN_NAME;
+import static monasca.common.middleware.AuthConstants.AUTH_PROJECT_ID;
+import static monasca.common.middleware.AuthConstants.AUTH_PROJECT_NAME;
+import static monasca.common.middleware.AuthConstants.AUTH_ROLES;
+import static monasca.common.middleware.AuthConstants.AUTH_SERVICE_CATALOG;
+import static monasca.common.middleware.AuthConstants.AUTH_TENANT_ID;
+import static monasca.common.middleware.AuthConstants.AUTH_TENANT_NAME;
+import static monasca.common.middleware.AuthConstants.AUTH_USER_DOMAIN_ID;
+import static monasca.common.middleware.AuthConstants.AUTH_USER_DOMAIN_NAME;
+import static monasca.common.middleware.AuthConstants.AUTH_USER_ID;
+import static monasca.common.middleware.AuthConstants.AUTH_USER_NAME;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletRequest;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The immutable result of a token validation: the request attributes derived from the
+ * authentication server's response and the token's expiry. It is built once when a token is
+ * validated so that requests with cached tokens only copy attributes.
+ * <p/>
+ * As many contexts are cached, they are held compactly: attributes are held in arrays rather than
+ * a map, and attribute values are interned, so the roles and service catalog shared by the tokens
+ * of a project are held once however many of its tokens are cached.
+ */
+public final class AuthContext {
+  /** The issue time of tokens whose response doesn't have one */
+  public static final long UNKNOWN_ISSUED_AT = Long.MIN_VALUE;
+
+  private static final Interner<String> VALUES = Interners.newWeakInterner();
+  /** Estimated bytes held by a context apart from its strings: the object, arrays and list */
+  private static final int BASE_WEIGHT = 120;
+  /** Estimated bytes held by a string apart from its characters */
+  private static final int STRING_WEIGHT = 40;
+
+  /** Attribute names, which are constants, and their values, at the same indices */
+  private final String[] names;
+  private final String[] values;
+  private final long expiresAt;
+  private final long issuedAt;
+  private final List<String> auditIds;
+  private final int weight;
+
+  private AuthContext(Map<String, String> attributes, long expiresAt, long issuedAt,
+    List<String> auditIds) {
+    names = attributes.keySet().toArray(new String[attributes.size()]);
+    values = new String[names.length];
+    // Values shared with other contexts, such as roles and the catalog, are held once however
+    // many contexts refer to them, so only the references to them are counted
+    int weight = BASE_WEIGHT + 8 * (names.length + auditIds.size());
+    for (int i = 0; i < names.length; i++) {
+      values[i] = VALUES.intern(attributes.get(names[i]));
+      if (names[i].equals(AUTH_USER_ID) || names[i].equals(AUTH_USER_NAME))
+        weight += weigh(values[i]);
+    }
+    for (String auditId : auditIds)
+      weight += weigh(auditId);
+    this.expiresAt = expiresAt;
+    this.issuedAt = issuedAt;
+    this.auditIds = auditIds.isEmpty() ? Collections.<String>emptyList()
+      : Collections.unmodifiableList(Arrays.asList(auditIds.toArray(new String[auditIds.size()])));
+    this.weight = weight;
+  }
+
+  /**
+   * Returns the context for a v2.0 or v3 validation {@code response}.
+   *
+   * @param includeCatalog whether to include the service catalog
+   */
+  public static AuthContext fromResponse(String response, boolean includeCatalog) {
+    JsonObject root = new JsonParser().parse(response).getAsJsonObject();
+    Map<String, String> attributes = new LinkedHashMap<>();
+    JsonObject token;
+    if (root.has("access")) {
+      readV2Response(root.getAsJsonObject("access"), includeCatalog, attributes);
+      token = root.getAsJsonObject("access").getAsJsonObject("token");
+    } else {
+      token = root.getAsJsonObject("token");
+      readV3Response(token, includeCatalog, attributes);
+    }
+
+    long issuedAt = UNKNOWN_ISSUED_AT;
+    JsonElement issued = token.get("issued_at");
+    if (issued != null && !issued.isJsonNull()) {
+      long parsed = TokenExpiry.parse(issued.getAsString());
+      if (parsed != TokenExpiry.UNKNOWN)
+        issuedAt = parsed;
+    }
+    List<String> auditIds = new ArrayList<>();
+    JsonElement audit = token.get("audit_ids");
+    if (audit != null && audit.isJsonArray()) {
+      for (JsonElement auditId : audit.getAsJsonArray())
+        auditIds.add(auditId.getAsString());
+    }
+    return new AuthContext(attributes, TokenExpiry.fromResponse(root), issuedAt, auditIds);
+  }
+
+  private static void readV3Response(JsonObject token, boolean includeCatalog,
+    Map<String, String> attributes) {
+    // Domain Scoped Token
+    if (token.get("domain") != null) {
+      JsonObject domain = token.get("domain").getAsJsonObject();
+      attributes.put(AUTH_DOMAIN_ID, domain.get("id").getAsString());
+      if (domain.get("name") != null) {
+        attributes.put(AUTH_DOMAIN_NAME, domain.get("name").getAsString());
+      }
+    }
+    // Project Scoped Token
+    if (token.get("project") != null) {
+      JsonObject project = token.get("project").getAsJsonObject();
+      attributes.put(AUTH_PROJECT_ID, project.get("id").getAsString());
+      attributes.put(AUTH_PROJECT_NAME, project.get("name").getAsString());
+
+      JsonObject projectDomain = project.get("domain").getAsJsonObject();
+      // special case where the value of id is null
+      if (!projectDomain.get("id").isJsonNull()) {
+        attributes.put(AUTH_PROJECT_DOMAIN_ID, projectDomain.get("id").getAsString());
+      }
+      if (projectDomain.get("name") != null) {
+        attributes.put(AUTH_PROJECT_DOMAIN_NAME, projectDomain.get("name").getAsString());
+      }
+    }
+    // User info
+    if (token.get("user") != null) {
+      JsonObject user = token.get("user").getAsJsonObject();
+      attributes.put(AUTH_USER_ID, user.get("id").getAsString());
+      attributes.put(AUTH_USER_NAME, user.get("name").getAsString());
+
+      JsonObject userDomain = user.get("domain").getAsJsonObject();
+      if (userDomain.get("id") != null) {
+        attributes.put(AUTH_USER_DOMAIN_ID, userDomain.get("id").getAsString());
+      }
+      if (userDomain.get("name") != null) {
+        attributes.put(AUTH_USER_DOMAIN_NAME, userDomain.get("name").getAsString());
+      }
+    }
+    // Roles
+    JsonArray roles = token.getAsJsonArray("roles");
+    if (roles != null) {
+      StringBuilder roleBuilder = new StringBuilder();
+      for (JsonElement role : roles) {
+        roleBuilder.append(role.getAsJsonObject().get("name").getAsString()).append(",");
+      }
+      attributes.put(AUTH_ROLES, roleBuilder.toString());
+    }
+    // Catalog
+    if (token.get("catalog") != null && includeCatalog) {
+      attributes.put(AUTH_SERVICE_CATALOG, token.get("catalog").getAsJsonArray().toString());
+    }
+  }
+
+  private static void readV2Response(JsonObject access, boolean includeCatalog,
+    Map<String, String> attributes) {
+    StringBuilder tenants = new StringBuilder();
+    StringBuilder nonTenants = new StringBuilder();
+    JsonObject token = access.get("token").getAsJsonObject();
+
+    // Tenant info
+    if (token.get("tenant") != null) {
+      JsonObject tenant = token.get("tenant").getAsJsonObject();
+      attributes.put(AUTH_TENANT_ID, tenant.get("id").getAsString());
+      attributes.put(AUTH_TENANT_NAME, tenant.get("name").getAsString());
+    }
+    // User info
+    if (access.get("user") != null) {
+      JsonObject user = access.get("user").getAsJsonObject();
+      attributes.put(AUTH_USER_ID, user.get("id").getAsString());
+      attributes.put(AUTH_USER_NAME, user.get("name").getAsString());
+      // Roles
+      JsonArray roles = user.getAsJsonArray("roles");
+      if (roles != null) {
+        Iterator<JsonElement> it = roles.iterator();
+        while (it.hasNext()) {
+          JsonObject role = it.next().getAsJsonObject();
+          if (role.get("tenantId") != null) {
+            tenants.append(",");
+            tenants.append(role.get("name").getAsString());
+          } else {
+            nonTenants.append(",");
+            nonTenants.append(role.get("name").getAsString());
+          }
+        }
+      }
+      if (tenants.length() > 0) {
+        attributes.put(AUTH_ROLES, tenants.substring(1));
+      }
+      if (nonTenants.length() > 0) {
+        attributes.put(AUTH_HP_IDM_ROLES, nonTenants.substring(1));
+      }
+    }
+    // Service catalog
+    if (access.get("serviceCatalog") != null && includeCatalog) {
+      attributes.put(AUTH_SERVICE_CATALOG, access.get("serviceCatalog").getAsJsonArray()
+        .toString());
+    }
+  }
+
+  /**
+   * Sets the context's attributes on the {@code req}.
+   */
+  public void applyTo(ServletRequest req) {
+    for (int i = 0; i < names.length; i++) {
+      req.setAttribute(names[i], values[i]);
+    }
+  }
+
+  /**
+   * Returns the value of the request attribute {@code name}, else null.
+   */
+  public String getAttribute(String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name))
+        return values[i];
+    }
+    return null;
+  }
+
+  /**
+   * Returns an unmodifiable map of the request attributes.
+   */
+  public Map<String, String> getAttributes() {
+    Map<String, String> attributes = new LinkedHashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      attributes.put(names[i], values[i]);
+    }
+    return Collections.unmodifiableMap(attributes);
+  }
+
+  /**
+   * Returns an estimate of the bytes held by the context alone: its user's id and name, its audit
+   * ids and its references to the values it shares with other contexts.
+   */
+  public int getWeight() {
+    return weight;
+  }
+
+  /**
+   * Returns the token's expiry in milliseconds since the epoch, else {@link TokenExpiry#UNKNOWN}.
+   */
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  /**
+   * Returns the time the token was issued in milliseconds since the epoch, else
+   * {@link #UNKNOWN_ISSUED_AT}.
+   */
+  public long getIssuedAt() {
+    return issuedAt;
+  }
+
+  /**
+   * Returns the token's audit ids, the first identifying the token itself and the last the chain
+   * of tokens it was rescoped from.
+   */
+  public List<String> getAuditIds() {
+    return auditIds;
+  }
+
+  public String getUserId() {
+    return getAttribute(AUTH_USER_ID);
+  }
+
+  /**
+   * Returns the v3 project id, else the v2.0 tenant id.
+   */
+  public String getProjectId() {
+    String projectId = getAttribute(AUTH_PROJECT_ID);
+    return projectId == null ? getAttribute(AUTH_TENANT_ID) : projectId;
+  }
+
+  public String getRoles() {
+    return getAttribute(AUTH_ROLES);
+  }
+
+  private static int weigh(String value) {
+    return STRING_WEIGHT + 2 * value.length();
+  }
+
+  @Override
+  public String toString() {
+    return "AuthContext [userId=" + getUserId() + ", projectId=" + getProjectId() + "]";
+  }
+}
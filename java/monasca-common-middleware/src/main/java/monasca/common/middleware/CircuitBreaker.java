@@ -0,0 +1,165 @@
+package monasca.common.middleware;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A circuit breaker shared by all calls to the authentication server.
+ * <p/>
+ * While closed, the outcomes of the most recent calls are tracked in a sliding window, and the
+ * breaker opens once the window holds at least the minimum number of calls and the percentage of
+ * failures reaches the threshold. While open, calls are refused without contacting the server.
+ * After the open time the breaker becomes half-open and lets a limited number of trial calls
+ * through: a failed trial reopens it, and once every trial has succeeded it closes again.
+ * <p/>
+ * Only failures to reach the server should be recorded as failures. A server that rejects a token
+ * is healthy.
+ */
+public class CircuitBreaker {
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  private final int failureRateThreshold;
+  private final int minimumCalls;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  /** Outcomes of the most recent calls while closed, true for failures */
+  private final boolean[] window;
+  private int windowIndex;
+  private int windowCount;
+  private int windowFailures;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+
+  private final AtomicLong openCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  /**
+   * @param failureRateThreshold  the percentage of failed calls at which the breaker opens
+   * @param windowSize            the number of most recent calls over which the failure rate is
+   *                              measured
+   * @param minimumCalls          the number of calls the window must hold before the breaker can
+   *                              open
+   * @param openTime              the time, in milliseconds, the breaker stays open
+   * @param halfOpenCalls         the number of trial calls let through while half-open
+   */
+  public CircuitBreaker(int failureRateThreshold, int windowSize, int minimumCalls, long openTime,
+    int halfOpenCalls) {
+    if (failureRateThreshold <= 0 || failureRateThreshold > 100)
+      throw new IllegalArgumentException("failureRateThreshold must be between 1 and 100");
+    if (windowSize <= 0)
+      throw new IllegalArgumentException("windowSize must be > 0");
+    this.failureRateThreshold = failureRateThreshold;
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openTime);
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    window = new boolean[windowSize];
+  }
+
+  /**
+   * Returns whether a call may be made, reserving a trial call if the breaker is half-open. Each
+   * permitted call must be followed by {@link #onSuccess()} or {@link #onFailure()}.
+   */
+  public synchronized boolean allowRequest() {
+    if (state == State.OPEN) {
+      if (System.nanoTime() - openedAt < openNanos) {
+        rejectedCount.incrementAndGet();
+        return false;
+      }
+      logger.info("Circuit breaker half-open, trying the authentication server");
+      state = State.HALF_OPEN;
+      halfOpenPermits = halfOpenCalls;
+      halfOpenSuccesses = 0;
+    }
+    if (state == State.HALF_OPEN) {
+      if (halfOpenPermits == 0) {
+        rejectedCount.incrementAndGet();
+        return false;
+      }
+      halfOpenPermits--;
+    }
+    return true;
+  }
+
+  /**
+   * Records a call that reached the authentication server.
+   */
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      if (++halfOpenSuccesses >= halfOpenCalls)
+        close();
+    } else if (state == State.CLOSED) {
+      record(false);
+    }
+  }
+
+  /**
+   * Records a call that failed to reach the authentication server.
+   */
+  public synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      open();
+    } else if (state == State.CLOSED) {
+      record(true);
+      if (windowCount >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCount)
+        open();
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Returns the number of times the breaker has opened.
+   */
+  public long getOpenCount() {
+    return openCount.get();
+  }
+
+  /**
+   * Returns the number of calls refused while the breaker was open or half-open.
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  private void record(boolean failure) {
+    if (windowCount == window.length) {
+      if (window[windowIndex])
+        windowFailures--;
+    } else {
+      windowCount++;
+    }
+    window[windowIndex] = failure;
+    if (failure)
+      windowFailures++;
+    windowIndex = (windowIndex + 1) % window.length;
+  }
+
+  private void open() {
+    logger.warn("Circuit breaker open, failing authentication server calls fast for {} ms",
+      TimeUnit.NANOSECONDS.toMillis(openNanos));
+    state = State.OPEN;
+    openedAt = System.nanoTime();
+    openCount.incrementAndGet();
+  }
+
+  private void close() {
+    logger.info("Circuit breaker closed");
+    state = State.CLOSED;
+    windowIndex = 0;
+    windowCount = 0;
+    windowFailures = 0;
+  }
+}
@@ -0,0 +1,13 @@
+package monasca.common.middleware;
+
+/**
+ * Thrown when a call to the authentication server is refused because the circuit breaker is open.
+ */
+public class CircuitOpenException extends ServiceUnavailableException {
+
+  private static final long serialVersionUID = 6051396812340163914L;
+
+  public CircuitOpenException(String msg) {
+    super(msg);
+  }
+}
@@ -24,7 +24,19 @@ public class Config implements AuthConstants {
   // Application wide init param -- ServletContext
   private ServletContext context = null;
 
-  private TokenCache<String, String> client = null;
+  private TokenCache<String> client = null;
+
+  private RejectedTokenCache rejectedTokens = null;
+
+  private AsyncTokenValidator asyncValidator = null;
+
+  private CircuitBreaker circuitBreaker = null;
+
+  private LocalTokenValidator localValidator = null;
+
+  private RevocationPoller revocationPoller = null;
+
+  private RetryBackoff retryBackoff = null;
 
   // Auth client factory
   private AuthClientFactory factory = null;
@@ -114,19 +126,64 @@ public class Config implements AuthConstants {
       long minIdleTime = getValue(CONN_POOL_MIN_IDLE_TIME, 90000L);
       retries = getValue(CONN_TIMEOUT_RETRIES, 3);
       pauseTime = getValue(PAUSE_BETWEEN_RETRIES, 100);
+      long maxPauseTime = getValue(MAX_PAUSE_BETWEEN_RETRIES, 2000L);
       delayAuthDecision = getValue(DELAY_AUTH_DECISION, false);
       includeCatalog = getValue(INCLUDE_SERVICE_CATALOG, true);
       adminAuthMethod = getValue(ADMIN_AUTH_METHOD, "");
       adminProjectId = getValue(ADMIN_PROJECT_ID, "");
       timeToCacheToken = getValue(TIME_TO_CACHE_TOKEN, 600);
       long maxTokenCacheSize = getValue(MAX_TOKEN_CACHE_SIZE, 1048576);
+      long maxTokenCacheBytes = getValue(MAX_TOKEN_CACHE_BYTES, 0L);
+      long refreshAheadTime = getValue(TOKEN_REFRESH_AHEAD_TIME, 0L);
+      int refreshThreads = getValue(TOKEN_REFRESH_THREADS, 2);
+      long staleIfErrorTime = getValue(TOKEN_STALE_IF_ERROR_TIME, 0L);
+      long timeToCacheInvalidToken = getValue(TIME_TO_CACHE_INVALID_TOKEN, 30L);
+      long maxInvalidTokenCacheSize = getValue(MAX_INVALID_TOKEN_CACHE_SIZE, 16384L);
+      long revocationPollInterval = getValue(REVOCATION_POLL_INTERVAL, 0L);
+      int failureRateThreshold = getValue(CIRCUIT_BREAKER_FAILURE_RATE, 0);
+      int breakerWindowSize = getValue(CIRCUIT_BREAKER_WINDOW_SIZE, 20);
+      int breakerMinimumCalls = getValue(CIRCUIT_BREAKER_MINIMUM_CALLS, 10);
+      long breakerOpenTime = getValue(CIRCUIT_BREAKER_OPEN_TIME, 5000L);
+      int breakerHalfOpenCalls = getValue(CIRCUIT_BREAKER_HALF_OPEN_CALLS, 3);
+      boolean asyncValidation = getValue(ASYNC_VALIDATION, false);
+      int asyncValidationThreads = getValue(ASYNC_VALIDATION_THREADS, 8);
 
       this.factory = AuthClientFactory.build(host, port, useHttps, timeout,
         clientAuth, keyStore, keyPass, trustStore, trustPass,
         maxActive, maxIdle, evictPeriod, minIdleTime, adminToken);
 
       verifyRequiredParamsForAuthMethod();
-      this.client = new TokenCache<>(maxTokenCacheSize, timeToCacheToken, map);
+      String localValidatorClass = getValue(LOCAL_TOKEN_VALIDATOR, "");
+      this.localValidator = null;
+      if (!localValidatorClass.isEmpty()) {
+        this.localValidator = (LocalTokenValidator) Class.forName(localValidatorClass)
+          .getDeclaredConstructor().newInstance();
+        this.localValidator.init(filterConfig);
+      }
+      this.retryBackoff = new RetryBackoff(pauseTime, maxPauseTime);
+      this.circuitBreaker = null;
+      if (failureRateThreshold > 0) {
+        this.circuitBreaker = new CircuitBreaker(failureRateThreshold, breakerWindowSize,
+          breakerMinimumCalls, breakerOpenTime, breakerHalfOpenCalls);
+      }
+      this.client = new TokenCache<>(maxTokenCacheSize, maxTokenCacheBytes, timeToCacheToken,
+        refreshAheadTime, staleIfErrorTime, refreshThreads, map);
+      this.revocationPoller = null;
+      if (revocationPollInterval > 0 && !authVersion.equalsIgnoreCase("v2.0")) {
+        this.revocationPoller = new RevocationPoller(client, factory, revocationPollInterval,
+          timeToCacheToken + staleIfErrorTime);
+        this.revocationPoller.start();
+      }
+      this.rejectedTokens = null;
+      if (timeToCacheInvalidToken > 0) {
+        this.rejectedTokens = new RejectedTokenCache(maxInvalidTokenCacheSize,
+          timeToCacheInvalidToken);
+      }
+      this.asyncValidator = null;
+      if (asyncValidation) {
+        this.asyncValidator = new AsyncTokenValidator(asyncValidationThreads, retries,
+          retryBackoff);
+      }
       logger.info("Using https {}", useHttps);
       if (useHttps) {
         logger.info("Auth host (2-way SSL: " + clientAuth + "): " + host);
@@ -204,7 +261,7 @@ public class Config implements AuthConstants {
     return context;
   }
 
-  protected TokenCache<String, String> getClient() {
+  protected TokenCache<String> getClient() {
     return client;
   }
 
@@ -212,6 +269,10 @@ public class Config implements AuthConstants {
     return factory;
   }
 
+  public void setFactory(AuthClientFactory factory) {
+    this.factory = factory;
+  }
+
   protected String getServiceIds() {
     return serviceIds;
   }
@@ -240,10 +301,46 @@ public class Config implements AuthConstants {
     this.timeToCacheToken = timeToCachedToken;
   }
 
-  public void setClient(TokenCache<String, String> client) {
+  public void setClient(TokenCache<String> client) {
     this.client = client;
   }
 
+  protected RejectedTokenCache getRejectedTokens() {
+    return rejectedTokens;
+  }
+
+  public void setRejectedTokens(RejectedTokenCache rejectedTokens) {
+    this.rejectedTokens = rejectedTokens;
+  }
+
+  protected CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  protected LocalTokenValidator getLocalValidator() {
+    return localValidator;
+  }
+
+  protected RetryBackoff getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  protected RevocationPoller getRevocationPoller() {
+    return revocationPoller;
+  }
+
+  public void setRevocationPoller(RevocationPoller revocationPoller) {
+    this.revocationPoller = revocationPoller;
+  }
+
+  protected AsyncTokenValidator getAsyncValidator() {
+    return asyncValidator;
+  }
+
+  public void setAsyncValidator(AsyncTokenValidator asyncValidator) {
+    this.asyncValidator = asyncValidator;
+  }
+
   private <T> T getValue(String paramName, T defaultValue) {
     Class<?> type = defaultValue.getClass();
 
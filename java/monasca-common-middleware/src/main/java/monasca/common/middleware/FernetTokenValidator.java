@@ -0,0 +1,345 @@
+package monasca.common.middleware;
+
+import static monasca.common.middleware.AuthConstants.FERNET_KEY_CHECK_INTERVAL;
+import static monasca.common.middleware.AuthConstants.FERNET_KEY_REPOSITORY;
+import static monasca.common.middleware.AuthConstants.FERNET_TOKEN_TTL;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+/**
+ * Validates Keystone Fernet tokens locally using the keys in Keystone's Fernet key repository.
+ * <p/>
+ * A token's signature is verified and its payload decrypted and decoded to find its expiry, so
+ * forged and expired tokens are rejected without contacting Keystone. Fernet payloads carry neither
+ * roles nor the service catalog, and revocations are only known to Keystone, so tokens that pass
+ * are still validated with Keystone, as are tokens in other formats and all tokens while no keys
+ * can be read.
+ * <p/>
+ * Tokens not signed with any of the keys are rejected, so the key repository must be kept in step
+ * with Keystone's. It is checked for changes at most once per key check interval, so rotated keys
+ * are picked up without restarting.
+ */
+public class FernetTokenValidator implements LocalTokenValidator {
+  private static final Logger logger = LoggerFactory.getLogger(FernetTokenValidator.class);
+
+  private static final byte VERSION = (byte) 0x80;
+  private static final int TIMESTAMP_LENGTH = 8;
+  private static final int IV_LENGTH = 16;
+  private static final int HMAC_LENGTH = 32;
+  private static final int MIN_TOKEN_LENGTH = 1 + TIMESTAMP_LENGTH + IV_LENGTH + 16 + HMAC_LENGTH;
+
+  private final Ticker ticker;
+  private File keyRepository;
+  private long ttlMillis;
+  private long keyCheckIntervalMillis;
+  private volatile List<byte[]> keys = Collections.emptyList();
+  private volatile String keysVersion;
+  private volatile long lastKeyCheck;
+
+  public FernetTokenValidator() {
+    this(TokenCache.WALL_CLOCK);
+  }
+
+  FernetTokenValidator(Ticker ticker) {
+    this.ticker = ticker;
+  }
+
+  /**
+   * Reads the key repository, token time to live and key check interval from the
+   * {@link AuthConstants#FERNET_KEY_REPOSITORY}, {@link AuthConstants#FERNET_TOKEN_TTL} and
+   * {@link AuthConstants#FERNET_KEY_CHECK_INTERVAL} init parameters.
+   */
+  @Override
+  public void init(FilterConfig filterConfig) {
+    String repository = filterConfig.getInitParameter(FERNET_KEY_REPOSITORY);
+    if (repository == null || repository.isEmpty())
+      throw new IllegalArgumentException("Need to specify " + FERNET_KEY_REPOSITORY);
+    init(new File(repository), getValue(filterConfig, FERNET_TOKEN_TTL, 3600L),
+      getValue(filterConfig, FERNET_KEY_CHECK_INTERVAL, 30L));
+  }
+
+  /**
+   * @param keyRepository     the directory of Fernet keys
+   * @param ttl               the time, in seconds, for which tokens are valid after being issued
+   * @param keyCheckInterval  the time, in seconds, between checks of the key repository for
+   *                          rotated keys
+   */
+  public void init(File keyRepository, long ttl, long keyCheckInterval) {
+    this.keyRepository = keyRepository;
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttl);
+    this.keyCheckIntervalMillis = TimeUnit.SECONDS.toMillis(keyCheckInterval);
+    loadKeys();
+  }
+
+  @Override
+  public AuthContext validate(String token) {
+    byte[] decoded = decode(token);
+    if (decoded == null)
+      return null;
+
+    long now = now();
+    if (now - lastKeyCheck >= keyCheckIntervalMillis)
+      loadKeys();
+
+    List<byte[]> keys = this.keys;
+    if (keys.isEmpty())
+      return null;
+    byte[] payload = decrypt(decoded, keys);
+    if (payload == null)
+      throw new InvalidTokenException("Authorization failed for user token: invalid signature");
+
+    long expiresAt = expiresAt(payload);
+    if (expiresAt == TokenExpiry.UNKNOWN) {
+      long issuedAt = TimeUnit.SECONDS.toMillis(ByteBuffer.wrap(decoded, 1, TIMESTAMP_LENGTH)
+        .getLong());
+      expiresAt = issuedAt + ttlMillis;
+    }
+    if (now >= expiresAt)
+      throw new InvalidTokenException("Authorization failed for user token: expired");
+    return null;
+  }
+
+  /**
+   * Returns the number of keys loaded.
+   */
+  public int getKeyCount() {
+    return keys.size();
+  }
+
+  /**
+   * Returns the decoded {@code token}, else null if it is not a Fernet token.
+   */
+  private static byte[] decode(String token) {
+    // Keystone strips the base64 padding from tokens
+    StringBuilder padded = new StringBuilder(token);
+    while (padded.length() % 4 != 0)
+      padded.append('=');
+    byte[] decoded;
+    try {
+      decoded = BaseEncoding.base64Url().decode(padded);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (decoded.length < MIN_TOKEN_LENGTH || decoded[0] != VERSION
+      || (decoded.length - MIN_TOKEN_LENGTH) % 16 != 0)
+      return null;
+    return decoded;
+  }
+
+  /**
+   * Returns the payload of the {@code decoded} token, else null if it was not signed with one of
+   * the {@code keys} or can't be decrypted.
+   */
+  private static byte[] decrypt(byte[] decoded, List<byte[]> keys) {
+    int signedLength = decoded.length - HMAC_LENGTH;
+    byte[] hmac = Arrays.copyOfRange(decoded, signedLength, decoded.length);
+    for (byte[] key : keys) {
+      try {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, 0, 16, "HmacSHA256"));
+        mac.update(decoded, 0, signedLength);
+        if (!MessageDigest.isEqual(hmac, mac.doFinal()))
+          continue;
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, 16, 16, "AES"),
+          new IvParameterSpec(decoded, 1 + TIMESTAMP_LENGTH, IV_LENGTH));
+        int offset = 1 + TIMESTAMP_LENGTH + IV_LENGTH;
+        return cipher.doFinal(decoded, offset, signedLength - offset);
+      } catch (GeneralSecurityException e) {
+        logger.debug("Failed to decrypt Fernet token", e);
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the expiry in a Keystone token payload, else {@link TokenExpiry#UNKNOWN}. Payloads are
+   * MessagePack arrays in which the expiry is the only floating point field.
+   */
+  static long expiresAt(byte[] payload) {
+    try {
+      Object decoded = new MessagePackReader(payload).read();
+      if (decoded instanceof List) {
+        for (Object field : (List<?>) decoded) {
+          if (field instanceof Double)
+            return (long) (((Double) field) * 1000);
+        }
+      }
+    } catch (RuntimeException e) {
+      logger.debug("Failed to decode Fernet token payload", e);
+    }
+    return TokenExpiry.UNKNOWN;
+  }
+
+  /**
+   * Loads the keys if the key repository has changed since they were last loaded.
+   */
+  private synchronized void loadKeys() {
+    lastKeyCheck = now();
+    File[] files = keyRepository.listFiles();
+    if (files == null) {
+      logger.warn("Unable to read Fernet key repository {}", keyRepository);
+      return;
+    }
+    Arrays.sort(files);
+    StringBuilder version = new StringBuilder();
+    for (File file : files)
+      version.append(file.getName()).append(':').append(file.lastModified()).append(':')
+        .append(file.length()).append(',');
+    if (version.toString().equals(keysVersion))
+      return;
+
+    List<byte[]> loaded = new ArrayList<>(files.length);
+    for (File file : files) {
+      if (!file.isFile() || file.getName().startsWith("."))
+        continue;
+      try {
+        byte[] key = BaseEncoding.base64Url().decode(Files.toString(file, Charsets.US_ASCII)
+          .trim());
+        if (key.length == 32)
+          loaded.add(key);
+        else
+          logger.warn("Ignoring Fernet key {} of {} bytes", file, key.length);
+      } catch (IOException | IllegalArgumentException e) {
+        logger.warn("Unable to read Fernet key {}: {}", file, e.getMessage());
+      }
+    }
+    keys = Collections.unmodifiableList(loaded);
+    keysVersion = version.toString();
+    logger.info("Loaded {} Fernet keys from {}", loaded.size(), keyRepository);
+  }
+
+  /**
+   * Returns the current time in milliseconds since the epoch.
+   */
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+  }
+
+  private static long getValue(FilterConfig filterConfig, String paramName, long defaultValue) {
+    String value = filterConfig.getInitParameter(paramName);
+    return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+  }
+
+  /**
+   * Reads the subset of MessagePack used by Keystone token payloads.
+   */
+  static final class MessagePackReader {
+    private final ByteBuffer buffer;
+
+    MessagePackReader(byte[] bytes) {
+      buffer = ByteBuffer.wrap(bytes);
+    }
+
+    Object read() {
+      int type = buffer.get() & 0xff;
+      if (type <= 0x7f)
+        return (long) type;
+      if (type >= 0xe0)
+        return (long) (byte) type;
+      if ((type & 0xf0) == 0x90)
+        return readArray(type & 0x0f);
+      if ((type & 0xf0) == 0x80)
+        return readMap(type & 0x0f);
+      if ((type & 0xe0) == 0xa0)
+        return readString(type & 0x1f);
+
+      switch (type) {
+        case 0xc0:
+          return null;
+        case 0xc2:
+          return false;
+        case 0xc3:
+          return true;
+        case 0xc4:
+          return readBytes(buffer.get() & 0xff);
+        case 0xc5:
+          return readBytes(buffer.getShort() & 0xffff);
+        case 0xc6:
+          return readBytes(buffer.getInt());
+        case 0xca:
+          return (double) buffer.getFloat();
+        case 0xcb:
+          return buffer.getDouble();
+        case 0xcc:
+          return (long) (buffer.get() & 0xff);
+        case 0xcd:
+          return (long) (buffer.getShort() & 0xffff);
+        case 0xce:
+          return buffer.getInt() & 0xffffffffL;
+        case 0xcf:
+        case 0xd3:
+          return buffer.getLong();
+        case 0xd0:
+          return (long) buffer.get();
+        case 0xd1:
+          return (long) buffer.getShort();
+        case 0xd2:
+          return (long) buffer.getInt();
+        case 0xd9:
+          return readString(buffer.get() & 0xff);
+        case 0xda:
+          return readString(buffer.getShort() & 0xffff);
+        case 0xdb:
+          return readString(buffer.getInt());
+        case 0xdc:
+          return readArray(buffer.getShort() & 0xffff);
+        case 0xdd:
+          return readArray(buffer.getInt());
+        case 0xde:
+          return readMap(buffer.getShort() & 0xffff);
+        case 0xdf:
+          return readMap(buffer.getInt());
+        default:
+          throw new IllegalArgumentException("Unsupported MessagePack type " + type);
+      }
+    }
+
+    private List<Object> readArray(int size) {
+      List<Object> array = new ArrayList<>(Math.min(size, buffer.remaining()));
+      for (int i = 0; i < size; i++)
+        array.add(read());
+      return array;
+    }
+
+    private List<Object> readMap(int size) {
+      // Keys and values are flattened, as payloads don't use maps
+      return readArray(size * 2);
+    }
+
+    private byte[] readBytes(int length) {
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return bytes;
+    }
+
+    private String readString(int length) {
+      return new String(readBytes(length), Charsets.UTF_8);
+    }
+  }
+}
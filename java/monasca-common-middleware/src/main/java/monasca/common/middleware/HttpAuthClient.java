@@ -10,11 +10,8 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
 import java.net.URI;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.net.URLEncoder;
 import java.util.Map;
-import java.util.TimeZone;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -22,39 +19,26 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonPrimitive;
 
-public class HttpAuthClient implements AuthClient {
+public class HttpAuthClient implements AuthClient, RevocationEventClient {
     private static final Logger logger = LoggerFactory.getLogger(HttpAuthClient.class);
 
-	private static final String PASSWORD = "password";
 	private static final String SERVICE_IDS_PARAM = "serviceIds";
 	private static final String ENDPOINT_IDS_PARAM = "endpointIds";
-	private static final int DELTA_TIME_IN_SEC = 30;
-	private static SimpleDateFormat expiryFormat;
-	static {
-		expiryFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-		expiryFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-	}
 	private final Config appConfig = Config.getInstance();
 
 	private HttpClient client;
-	private String adminToken;
-	private String adminTokenExpiry;
+	private AdminTokenProvider adminTokens;
 	private URI uri;
 
-	public HttpAuthClient(HttpClient client, URI uri) {
+	public HttpAuthClient(HttpClient client, URI uri, AdminTokenProvider adminTokens) {
 		this.client = client;
     this.uri = uri;
+    this.adminTokens = adminTokens;
   }
 
 	@Override
@@ -83,7 +67,8 @@ public class HttpAuthClient implements AuthClient {
 	private Object verifyUUIDToken(String token, String newUri,
 			Header[] header, String serviceIds, String endpointIds)
 			throws ClientProtocolException {
-		HttpResponse response = sendGet(newUri, header, serviceIds, endpointIds);
+		String adminToken = getAdminToken();
+		HttpResponse response = sendGet(newUri, header, adminToken, serviceIds, endpointIds);
 
     HttpEntity entity = response.getEntity();
     int code = response.getStatusLine().getStatusCode();
@@ -93,11 +78,20 @@ public class HttpAuthClient implements AuthClient {
         if (code == 404) {
           instream = entity.getContent();
           instream.close();
-          throw new AuthException("Authorization failed for user token: " + token);
+          throw new InvalidTokenException("Authorization failed for user token");
+        }
+
+        if (code >= 500) {
+          // A failing server or a proxy in front of it, not a rejection of either token
+          instream = entity.getContent();
+          instream.close();
+          throw new ServiceUnavailableException("Authentication server unavailable via HTTP "
+            + code + " " + response.getStatusLine().getReasonPhrase());
         }
 
         if (code != 200) {
-          adminToken = null;
+          if (adminToken != null)
+            adminTokens.invalidate(adminToken);
           instream = entity.getContent();
           instream.close();
           String reasonPhrase = response.getStatusLine().getReasonPhrase();
@@ -114,39 +108,45 @@ public class HttpAuthClient implements AuthClient {
 		return parseResponse(response);
 	}
 
-	private HttpResponse sendPost(String uri, StringEntity body)
-			throws ClientProtocolException {
-		HttpResponse response = null;
-		HttpPost post = new HttpPost(uri);
-		post.setHeader("Accept", "application/json");
-		post.setHeader("Content-Type", "application/json");
+	@Override
+	public Object getRevocationEvents(String since) throws ClientProtocolException {
+		String newUri;
 		try {
-			post.setEntity(body);
-			response = client.execute(post);
-      int code = response.getStatusLine().getStatusCode();
-			if (!(code == 201 || code == 200 || code == 203)) {
-				adminToken = null;
-				throw new AdminAuthException(
-						"Failed to authenticate admin credentials " + code
-								+ response.getStatusLine().getReasonPhrase());
+			newUri = uri.toString() + "/v3/OS-REVOKE/events?since="
+					+ URLEncoder.encode(since, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AuthException("Invalid revocation event timestamp " + since, e);
+		}
+		String adminToken = getAdminToken();
+		HttpResponse response = sendGet(newUri, null, adminToken, null, null);
+		int code = response.getStatusLine().getStatusCode();
+		if (code != 200) {
+			if (adminToken != null)
+				adminTokens.invalidate(adminToken);
+			try {
+				if (response.getEntity() != null)
+					response.getEntity().getContent().close();
+			} catch (IOException e) {
+				throw new ClientProtocolException("IO Exception: problem closing stream ", e);
 			}
-		} catch (IOException e) {
-		    final String message;
-		    if ((e.getMessage() == null) && (e.getCause() != null)) {
-		        message = e.getCause().getMessage();
-		    }
-		    else {
-		        message = e.getMessage();
-		    }
-		    logger.error("Failure authenticating adminUser: {}", message);
-			post.abort();
-            throw new AdminAuthException(
-                "Failure authenticating adminUser :" + message, e);
+			throw new AuthException("Failed to get revocation events via HTTP " + code + " "
+					+ response.getStatusLine().getReasonPhrase());
 		}
-		return response;
+		return parseResponse(response);
+	}
+
+	/**
+	 * Returns the admin token from the admin credentials, else null if a static admin token or
+	 * no admin authentication is configured.
+	 */
+	private String getAdminToken() throws ClientProtocolException {
+		if (appConfig.getAdminToken().isEmpty() && !appConfig.getAdminAuthMethod().isEmpty()) {
+			return adminTokens.getToken();
+		}
+		return null;
 	}
 
-	private HttpResponse sendGet(String newUri, Header[] headers,
+	private HttpResponse sendGet(String newUri, Header[] headers, String adminToken,
 			String serviceIds, String endpointIds)
 			throws ClientProtocolException {
 		HttpResponse response = null;
@@ -173,8 +173,8 @@ public class HttpAuthClient implements AuthClient {
     if(!appConfig.getAdminToken().isEmpty()) {
       get.setHeader(new BasicHeader(TOKEN, appConfig.getAdminToken()));
     }
-    else if (!appConfig.getAdminAuthMethod().isEmpty()) {
-      get.setHeader(new BasicHeader(TOKEN, getAdminToken()));
+    else if (adminToken != null) {
+      get.setHeader(new BasicHeader(TOKEN, adminToken));
     }
 
 		try {
@@ -193,7 +193,7 @@ public class HttpAuthClient implements AuthClient {
     return response;
 	}
 
-	private String parseResponse(HttpResponse response) {
+	static String parseResponse(HttpResponse response) {
 		StringBuffer json = new StringBuffer();
     HttpEntity entity = response.getEntity();
 		if (entity != null) {
@@ -218,120 +218,6 @@ public class HttpAuthClient implements AuthClient {
     return json.toString();
 	}
 
-	private String getAdminToken() throws ClientProtocolException {
-		HttpResponse response;
-		String json;
-		JsonParser jp = new JsonParser();
-
-		if (adminTokenExpiry != null) {
-			if (isExpired(adminTokenExpiry)) {
-				adminToken = null;
-			}
-		}
-		if (adminToken == null) {
-			if (appConfig.getAuthVersion().equalsIgnoreCase("v2.0")) {
-				StringEntity params = getUnscopedV2AdminTokenRequest();
-				String authUri = uri + "/v2.0/tokens";
-				response = sendPost(authUri, params);
-				json = parseResponse(response);
-				JsonObject access = jp.parse(json).getAsJsonObject()
-						.get("access").getAsJsonObject();
-				JsonObject token = access.get("token").getAsJsonObject();
-				adminToken = token.get("id").getAsString();
-				adminTokenExpiry = token.get("expires").getAsString();
-			} else {
-          StringEntity params = getUnscopedV3AdminTokenRequest();
-				String authUri = uri + "/v3/auth/tokens";
-				response = sendPost(authUri, params);
-				adminToken = response.getFirstHeader(AUTH_SUBJECT_TOKEN)
-						.getValue();
-				json = parseResponse(response);
-				JsonObject token = jp.parse(json).getAsJsonObject()
-						.get("token").getAsJsonObject();
-				adminTokenExpiry = token.get("expires_at").getAsString();
-
-			}
-		}
-		return adminToken;
-	}
-
-	private StringEntity getUnscopedV2AdminTokenRequest() {
-		StringBuffer bfr = new StringBuffer();
-		if (appConfig.getAdminAuthMethod().equalsIgnoreCase(PASSWORD)) {
-			bfr.append("{\"auth\": {\"passwordCredentials\": {\"username\": \"");
-			bfr.append(appConfig.getAdminUser());
-			bfr.append("\",\"password\": \"");
-			bfr.append(appConfig.getAdminPassword());
-			if (appConfig.getAdminProject() != null && !appConfig.getAdminProject().isEmpty()) {
-				bfr.append("\"}, \"tenantId\": \"");
-				bfr.append(appConfig.getAdminProject());
-				bfr.append("\"}}");
-			} else {
-				bfr.append("\"}}}");
-			}
-			try {
-				return new StringEntity(bfr.toString());
-			} catch (UnsupportedEncodingException e) {
-				throw new AdminAuthException("Invalid V2 authentication request "
-						+ e);
-			}
-		} else {
-			String msg = String.format("Admin auth method %s not supported",appConfig.getAdminAuthMethod());
-			throw new AdminAuthException(msg);
-		}
-	}
-
-	private String buildAuth(final String userName, final String password) {
-	  final JsonObject domain = new JsonObject();
-	  domain.addProperty("id", "default");
-      final JsonObject user = new JsonObject();
-      user.addProperty("name", userName);
-      user.addProperty("password", password);
-      user.add("domain", domain);
-      final JsonArray methods = new JsonArray();
-      final JsonObject passwordHolder = new JsonObject();
-      passwordHolder.add("user", user);
-      methods.add(new JsonPrimitive("password"));
-      final JsonObject identity = new JsonObject();
-      identity.add("methods", methods);
-      identity.add("password", passwordHolder);
-      final JsonObject auth = new JsonObject();
-      auth.add("identity", identity);
-      final JsonObject outer = new JsonObject();
-      outer.add("auth", auth);
-	  return outer.toString();
-	}
-
-	private StringEntity getUnscopedV3AdminTokenRequest() {
-		final String body;
-		if (appConfig.getAdminAuthMethod().equalsIgnoreCase(PASSWORD)) {
-		    body = buildAuth(appConfig.getAdminUser(), appConfig.getAdminPassword());
-		} else {
-			String msg = String.format("Admin auth method %s not supported",appConfig.getAdminAuthMethod());
-			throw new AdminAuthException(msg);
-		}
-		try {
-			return new StringEntity(body);
-		} catch (UnsupportedEncodingException e) {
-			throw new AdminAuthException("Invalid V3 authentication request " + e);
-		}
-	}
-
-	private boolean isExpired(String expires) {
-		Date tokenExpiryDate = null;
-		try {
-		    // The date looks like: 2014-11-13T02:34:59.953729Z
-		    // SimpleDateFormat can't handle the microseconds so take them off
-		    final String tmp = expires.replaceAll("\\.[\\d]+Z", "Z");
-			tokenExpiryDate = expiryFormat.parse(tmp);
-		} catch (ParseException e) {
-		    logger.warn("Failure parsing Admin Token expiration date: {}", e.getMessage());
-			return true;
-		}
-		Date current = new Date();
-		return tokenExpiryDate.getTime() < (current.getTime() + DELTA_TIME_IN_SEC * 1000);
-	}
-
 	public void reset() {	}
 
 }
@@ -36,6 +36,7 @@ public class HttpClientPoolFactory extends BasePoolableObjectFactory<Object> {
   private PoolingClientConnectionManager connMgr;
   private HttpPoolCleaner cleaner;
   private HttpClient client;
+  private AdminTokenProvider adminTokens;
 
   HttpClientPoolFactory(String host, int port, boolean useHttps, int timeout,
     boolean clientAuth, String keyStore, String keyPass,
@@ -71,6 +72,9 @@ public class HttpClientPoolFactory extends BasePoolableObjectFactory<Object> {
     // Create a single client
     client = new DefaultHttpClient(connMgr, params);
 
+    // Share one admin token between all of the pooled clients
+    adminTokens = new AdminTokenProvider(client, uri);
+
     // Create and start the connection pool cleaner
     cleaner = new HttpPoolCleaner(connMgr, timeBetweenEvictionRunsMillis,
       minEvictableIdleTimeMillis);
@@ -80,7 +84,7 @@ public class HttpClientPoolFactory extends BasePoolableObjectFactory<Object> {
 
   @Override
   public Object makeObject() throws Exception {
-    return new HttpAuthClient(client, uri);
+    return new HttpAuthClient(client, uri, adminTokens);
   }
 
   @Override
@@ -99,6 +103,8 @@ public class HttpClientPoolFactory extends BasePoolableObjectFactory<Object> {
     connMgr.shutdown();
     // Shutdown connection pool cleaner
     cleaner.shutdown();
+    // Stop refreshing the admin token
+    adminTokens.shutdown();
   }
 
   // get a socket factory
@@ -0,0 +1,14 @@
+package monasca.common.middleware;
+
+/**
+ * An exception to indicate that the authentication server rejected a token as invalid, as opposed
+ * to failing to validate it.
+ */
+public class InvalidTokenException extends AuthException {
+
+  private static final long serialVersionUID = -3093415716934282614L;
+
+  public InvalidTokenException(String msg) {
+    super(msg);
+  }
+}
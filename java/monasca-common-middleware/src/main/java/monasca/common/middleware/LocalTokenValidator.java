@@ -0,0 +1,26 @@
+package monasca.common.middleware;
+
+import javax.servlet.FilterConfig;
+
+/**
+ * Validates tokens locally, without a round-trip to the authentication server. Implementations are
+ * configured by class name with the {@link AuthConstants#LOCAL_TOKEN_VALIDATOR} init parameter,
+ * and must have a public no-argument constructor.
+ * <p/>
+ * Tokens the validator cannot decide are validated with the authentication server as usual.
+ */
+public interface LocalTokenValidator {
+  /**
+   * Initializes the validator from the filter's init parameters.
+   */
+  void init(FilterConfig filterConfig);
+
+  /**
+   * Returns the context for the {@code token}, else null if the token must be validated with the
+   * authentication server, for instance because its format is not supported or its validation
+   * requires information only the server has.
+   *
+   * @throws InvalidTokenException if the token is known to be invalid
+   */
+  AuthContext validate(String token);
+}
@@ -0,0 +1,55 @@
+package monasca.common.middleware;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * A bounded, short lived cache of tokens the authentication server rejected, so that repeated
+ * requests with a revoked or bogus token are refused without another round trip. Tokens are held
+ * as SHA-256 digests, so arbitrarily long bogus tokens don't take more space.
+ */
+public class RejectedTokenCache {
+  private final Cache<HashCode, Boolean> cache;
+
+  /**
+   * @param maxSize      the maximum number of rejected tokens to remember
+   * @param timeToExpire the time, in seconds, to remember a rejected token
+   */
+  public RejectedTokenCache(long maxSize, long timeToExpire) {
+    this(maxSize, timeToExpire, Ticker.systemTicker());
+  }
+
+  RejectedTokenCache(long maxSize, long timeToExpire, Ticker ticker) {
+    cache = CacheBuilder.newBuilder().ticker(ticker).maximumSize(maxSize)
+      .expireAfterWrite(timeToExpire, TimeUnit.SECONDS).build();
+  }
+
+  /**
+   * Returns whether the {@code token} was recently rejected.
+   */
+  public boolean isRejected(String token) {
+    return cache.getIfPresent(digest(token)) != null;
+  }
+
+  /**
+   * Remembers that the {@code token} was rejected. Only its digest is held, not the reason, which
+   * may quote the token.
+   */
+  public void reject(String token) {
+    cache.put(digest(token), Boolean.TRUE);
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  private static HashCode digest(String token) {
+    return Hashing.sha256().hashString(token, Charsets.UTF_8);
+  }
+}
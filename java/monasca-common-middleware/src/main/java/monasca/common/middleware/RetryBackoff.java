@@ -0,0 +1,34 @@
+package monasca.common.middleware;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter between retries of authentication server calls. The delay
+ * before each retry doubles from the initial delay up to the maximum, and half of it is
+ * randomized so that requests that failed together do not retry together.
+ */
+public class RetryBackoff {
+  private final long initialDelay;
+  private final long maxDelay;
+
+  /**
+   * @param initialDelay  the delay, in milliseconds, before the first retry
+   * @param maxDelay      the maximum delay, in milliseconds, before a retry
+   */
+  public RetryBackoff(long initialDelay, long maxDelay) {
+    this.initialDelay = Math.max(0, initialDelay);
+    this.maxDelay = Math.max(this.initialDelay, maxDelay);
+  }
+
+  /**
+   * Returns the delay, in milliseconds, before retry number {@code attempt}, counting from 0.
+   */
+  public long delay(int attempt) {
+    long delay = initialDelay;
+    for (int i = 0; i < attempt && delay < maxDelay; i++)
+      delay *= 2;
+    delay = Math.min(delay, maxDelay);
+    long half = delay / 2;
+    return half + (delay - half == 0 ? 0 : ThreadLocalRandom.current().nextLong(delay - half + 1));
+  }
+}
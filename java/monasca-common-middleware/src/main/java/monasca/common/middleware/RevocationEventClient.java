@@ -0,0 +1,15 @@
+package monasca.common.middleware;
+
+import org.apache.http.client.ClientProtocolException;
+
+/**
+ * An {@link AuthClient} that can also get Keystone's v3 token revocation events, for the
+ * {@link RevocationPoller}.
+ */
+public interface RevocationEventClient {
+  /**
+   * Returns the v3 token revocation events that occurred since the ISO 8601 timestamp
+   * {@code since}.
+   */
+  Object getRevocationEvents(String since) throws ClientProtocolException;
+}
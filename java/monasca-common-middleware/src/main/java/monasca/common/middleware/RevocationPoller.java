@@ -0,0 +1,273 @@
+package monasca.common.middleware;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Polls Keystone's v3 token revocation events and discards the cached validations of revoked
+ * tokens, so that tokens can be cached for longer without revoked tokens being accepted until
+ * their cache entries expire.
+ * <p/>
+ * An event revokes the tokens that were issued before it and match all of its user, project and
+ * audit ids. Events that revoke by attributes the cached validations don't have, such as roles or
+ * trusts, are applied as if those attributes matched, discarding more validations than necessary
+ * rather than fewer.
+ * <p/>
+ * Each event is applied to the whole cache once, when it is received. It is then retained for the
+ * retention time and applied by later polls only to validations that were in flight when it was
+ * received, so that it neither misses them nor repeatedly discards validations made after it.
+ * <p/>
+ * Events are got with clients that implement {@link RevocationEventClient}.
+ */
+public class RevocationPoller {
+  private static final Logger logger = LoggerFactory.getLogger(RevocationPoller.class);
+
+  private final TokenCache<String> cache;
+  private final AuthClientFactory factory;
+  private final long intervalMillis;
+  private final long retentionMillis;
+  private final ScheduledExecutorService scheduler;
+  private final List<RevocationEvent> events = new ArrayList<>();
+  private String since;
+
+  private final AtomicLong pollCount = new AtomicLong();
+  private final AtomicLong pollFailureCount = new AtomicLong();
+  private final AtomicLong invalidatedCount = new AtomicLong();
+
+  /**
+   * A revocation event, the time it was revoked, else the time it was received, and the time it
+   * was first applied.
+   */
+  static final class RevocationEvent implements Predicate<AuthContext> {
+    final String userId;
+    final String projectId;
+    final String auditId;
+    final String auditChainId;
+    final long issuedBefore;
+    final long revokedAt;
+    final String revokedAtText;
+    final long appliedAt;
+
+    RevocationEvent(JsonObject event, long receivedAt) {
+      userId = getString(event, "user_id");
+      projectId = getString(event, "project_id");
+      auditId = getString(event, "audit_id");
+      auditChainId = getString(event, "audit_chain_id");
+      String issued = getString(event, "issued_before");
+      issuedBefore = issued == null ? TokenExpiry.UNKNOWN : TokenExpiry.parse(issued);
+      revokedAtText = getString(event, "revoked_at");
+      long revoked = revokedAtText == null ? TokenExpiry.UNKNOWN
+        : TokenExpiry.parse(revokedAtText);
+      revokedAt = revoked == TokenExpiry.UNKNOWN ? receivedAt : revoked;
+      appliedAt = receivedAt;
+    }
+
+    /**
+     * Returns whether the event applies to a validation started at {@code validatedAt} and cached
+     * at {@code cachedAt} that a previous poll already applied it to, which is only the case if
+     * the validation was in flight when the event was first applied.
+     */
+    boolean reapplies(long validatedAt, long cachedAt) {
+      return validatedAt < appliedAt && appliedAt <= cachedAt;
+    }
+
+    @Override
+    public boolean apply(AuthContext context) {
+      if (context.getIssuedAt() != AuthContext.UNKNOWN_ISSUED_AT
+        && context.getIssuedAt() > issuedBefore)
+        return false;
+      List<String> auditIds = context.getAuditIds();
+      return matches(userId, context.getUserId())
+        && matches(projectId, context.getProjectId())
+        && (auditIds.isEmpty() || matches(auditId, auditIds.get(0))
+          && matches(auditChainId, auditIds.get(auditIds.size() - 1)));
+    }
+
+    /**
+     * Returns whether the {@code actual} value matches the event's {@code expected} value, treating
+     * a value absent from the event as matching any.
+     */
+    private static boolean matches(String expected, String actual) {
+      return expected == null || expected.equals(actual);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof RevocationEvent))
+        return false;
+      RevocationEvent other = (RevocationEvent) obj;
+      return Objects.equals(userId, other.userId) && Objects.equals(projectId, other.projectId)
+        && Objects.equals(auditId, other.auditId)
+        && Objects.equals(auditChainId, other.auditChainId) && issuedBefore == other.issuedBefore
+        && Objects.equals(revokedAtText, other.revokedAtText);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(userId, projectId, auditId, auditChainId, issuedBefore, revokedAtText);
+    }
+
+    private static String getString(JsonObject event, String name) {
+      JsonElement value = event.get(name);
+      return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+  }
+
+  /**
+   * @param cache      the cache to discard revoked tokens from
+   * @param factory    the factory of clients to get revocation events with
+   * @param interval   the time, in seconds, between polls
+   * @param retention  the time, in seconds, for which events are retained to apply to validations
+   *                   that were in flight when they were received
+   */
+  public RevocationPoller(TokenCache<String> cache, AuthClientFactory factory,
+    long interval, long retention) {
+    this.cache = cache;
+    this.factory = factory;
+    this.intervalMillis = TimeUnit.SECONDS.toMillis(interval);
+    this.retentionMillis = Math.max(TimeUnit.SECONDS.toMillis(retention), 2 * intervalMillis);
+    // Allow for clock skew with Keystone on the first poll
+    since = format(System.currentTimeMillis() - intervalMillis);
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+      .setNameFormat("token-revocation-poller-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Starts polling for revocation events every interval.
+   */
+  public void start() {
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          poll();
+        } catch (Exception e) {
+          pollFailureCount.incrementAndGet();
+          logger.warn("Failed to poll token revocation events: {}", e.getMessage());
+        }
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Gets the revocation events since the last poll and discards the cached validations of the
+   * tokens revoked by them, and by the retained events those that were in flight when the retained
+   * events were received, returning the number discarded.
+   */
+  public synchronized int poll() throws Exception {
+    pollCount.incrementAndGet();
+    String response;
+    AuthClient client = factory.getClient();
+    try {
+      if (!(client instanceof RevocationEventClient))
+        throw new UnsupportedOperationException(client.getClass().getName()
+          + " does not get revocation events");
+      response = (String) ((RevocationEventClient) client).getRevocationEvents(since);
+    } finally {
+      factory.recycle(client);
+    }
+
+    JsonArray received = new JsonParser().parse(response).getAsJsonObject()
+      .getAsJsonArray("events");
+    long now = System.currentTimeMillis();
+    for (Iterator<RevocationEvent> it = events.iterator(); it.hasNext();) {
+      RevocationEvent event = it.next();
+      if (now - event.revokedAt > retentionMillis)
+        it.remove();
+    }
+    final List<RevocationEvent> retained = new ArrayList<>(events);
+    final List<RevocationEvent> current = new ArrayList<>();
+    if (received != null) {
+      long latest = TokenExpiry.parse(since);
+      for (JsonElement element : received) {
+        RevocationEvent event = new RevocationEvent(element.getAsJsonObject(), now);
+        // An event revoked at the time polled since may be received again
+        if (!retained.contains(event))
+          current.add(event);
+        if (event.revokedAtText != null && event.revokedAt > latest) {
+          latest = event.revokedAt;
+          since = event.revokedAtText;
+        }
+      }
+    }
+
+    events.addAll(current);
+    if (events.isEmpty())
+      return 0;
+
+    int invalidated = cache.invalidateAll(new TokenCache.EntryFilter() {
+      @Override
+      public boolean matches(AuthContext context, long validatedAt, long cachedAt) {
+        for (RevocationEvent event : current) {
+          if (event.apply(context))
+            return true;
+        }
+        for (RevocationEvent event : retained) {
+          if (event.reapplies(validatedAt, cachedAt) && event.apply(context))
+            return true;
+        }
+        return false;
+      }
+    });
+    if (invalidated > 0) {
+      invalidatedCount.addAndGet(invalidated);
+      logger.info("Discarded {} revoked tokens from the token cache", invalidated);
+    }
+    return invalidated;
+  }
+
+  /**
+   * Returns the number of polls made.
+   */
+  public long getPollCount() {
+    return pollCount.get();
+  }
+
+  /**
+   * Returns the number of polls that failed.
+   */
+  public long getPollFailureCount() {
+    return pollFailureCount.get();
+  }
+
+  /**
+   * Returns the number of cached validations discarded.
+   */
+  public long getInvalidatedCount() {
+    return invalidatedCount.get();
+  }
+
+  /**
+   * Stops polling.
+   */
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private static String format(long millis) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(new Date(millis));
+  }
+}
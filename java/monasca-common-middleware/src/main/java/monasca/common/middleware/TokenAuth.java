@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -41,6 +42,7 @@ import org.slf4j.LoggerFactory;
 public class TokenAuth implements Filter, monasca.common.middleware.AuthConstants {
 
   private static final String TOKEN_NOTFOUND = "Bad Request: Token not found in the request";
+  private static final String TOKEN_REJECTED = "Unauthorized: Token was recently rejected";
   private static final String SERVICE_IDS_PARAM = "serviceIds";
   private static final String ENDPOINT_IDS_PARAM = "endpointIds";
   private static final String SERVICE_CATALOG_PARAM = "includeCatalog";
@@ -83,7 +85,7 @@ public class TokenAuth implements Filter, monasca.common.middleware.AuthConstant
       appConfig.initialize(filterConfig, req, getInputParams());
     }
     int retries = appConfig.getRetries();
-    long pauseTime = appConfig.getPauseTime();
+    RetryBackoff retryBackoff = appConfig.getRetryBackoff();
 
     // Extract credential
     String token = ((HttpServletRequest) req).getHeader(TOKEN);
@@ -99,58 +101,47 @@ public class TokenAuth implements Filter, monasca.common.middleware.AuthConstant
         logger.info("No token found...Skipping");
       }
     } else {
-      do {
-        try {
-          auth = FilterUtils.getCachedToken(token);
-        } catch (ServiceUnavailableException e) {
-          if (numberOfTries < retries) {
-            FilterUtils.pause(pauseTime);
-            logger.debug("Retrying connection after "
-                    + pauseTime + " seconds.");
-            numberOfTries++;
-            continue;
-          } else {
-            logger.debug("Exhausted retries..");
-            TokenExceptionHandler handler = TokenExceptionHandler
-                    .valueOf("ServiceUnavailableException");
-            handler.onException(e, resp, token);
-          }
-          return;
-        } catch (ClientProtocolException e) {
-          if (numberOfTries < retries) {
-            FilterUtils.pause(pauseTime);
-            logger.debug("Retrying connection after "
-                    + pauseTime + " seconds.");
-            numberOfTries++;
-            continue;
-          } else {
-            logger.debug("Exhausted retries..");
-            TokenExceptionHandler handler = TokenExceptionHandler
-                    .valueOf("ClientProtocolException");
-            handler.onException(e, resp, token);
-          }
-          return;
-        } catch (UncheckedExecutionException e) {
-          final TokenExceptionHandler handler;
-          final Exception toHandle;
-          if ((e.getCause() != null) && e.getCause() instanceof AdminAuthException) {
-            toHandle = (AdminAuthException)e.getCause();
-            handler = TokenExceptionHandler.valueOf("AdminAuthException");
-          }
-          else if ((e.getCause() != null) && e.getCause() instanceof AuthException) {
-            toHandle = (AuthException)e.getCause();
-            handler = TokenExceptionHandler.valueOf("AuthException");
-          }
-          else {
-            toHandle = e;
-            handler = TokenExceptionHandler.valueOf("UncheckedExecutionException");
+      if (FilterUtils.isRejectedToken(token)) {
+        logger.debug("Token was recently rejected, refusing without revalidation");
+        TokenExceptionHandler.valueOf("AuthException").onException(
+                new AuthException(TOKEN_REJECTED), resp, token);
+        return;
+      }
+      AsyncTokenValidator asyncValidator = appConfig.getAsyncValidator();
+      // Servlet 3 methods are only called in async mode, so Servlet 2.5 containers are unaffected
+      Object asyncResult = asyncValidator == null ? null : getAsyncResult(req);
+      if (asyncResult != null) {
+        // Dispatched back once asynchronous validation succeeded
+        req.removeAttribute(AsyncTokenValidator.VALIDATION_RESULT);
+        auth = asyncResult;
+      } else if (asyncValidator != null && req.isAsyncSupported()) {
+        asyncValidator.validate(token, req, resp);
+        return;
+      } else {
+        do {
+          try {
+            auth = FilterUtils.getCachedToken(token);
+          } catch (ServiceUnavailableException | ClientProtocolException
+                  | UncheckedExecutionException e) {
+            if (!isRetryable(e)) {
+              onValidationFailure(e, resp, token);
+              return;
+            }
+            if (numberOfTries < retries) {
+              long pauseTime = retryBackoff.delay(numberOfTries);
+              FilterUtils.pause(pauseTime);
+              logger.debug("Retrying connection after "
+                      + pauseTime + " milliseconds.");
+              numberOfTries++;
+              continue;
+            } else {
+              logger.debug("Exhausted retries..");
+              onValidationFailure(e, resp, token);
+            }
+            return;
           }
-          handler.onException(toHandle, resp, token);
-          return;
-        }
-
-
-      } while (auth == null && numberOfTries <= retries);
+        } while (auth == null && numberOfTries <= retries);
+      }
     }
     req = FilterUtils.wrapRequest(req, auth);
     logger.debug("TokenAuth: Forwarding down stream to next filter/servlet");
@@ -158,6 +149,59 @@ public class TokenAuth implements Filter, monasca.common.middleware.AuthConstant
     chain.doFilter(req, resp);
   }
 
+  /**
+   * Returns whether a validation that failed with {@code e} is worth retrying: the authentication
+   * server couldn't be reached, though not because the circuit breaker is open. Failures from the
+   * token cache's loader arrive wrapped in an UncheckedExecutionException.
+   */
+  static boolean isRetryable(Throwable e) {
+    Throwable cause = e instanceof UncheckedExecutionException && e.getCause() != null
+            ? e.getCause() : e;
+    return cause instanceof ServiceUnavailableException && !(cause instanceof CircuitOpenException)
+            || cause instanceof ClientProtocolException;
+  }
+
+  /**
+   * Returns the result of validating the request's token asynchronously if the request was
+   * dispatched back once validation succeeded, else null.
+   */
+  private static Object getAsyncResult(ServletRequest req) {
+    return req.getDispatcherType() == DispatcherType.ASYNC
+            ? req.getAttribute(AsyncTokenValidator.VALIDATION_RESULT) : null;
+  }
+
+  /**
+   * Responds to a request whose token could not be validated because of {@code e}.
+   */
+  static void onValidationFailure(Throwable e, ServletResponse resp, String token) {
+    final TokenExceptionHandler handler;
+    final Exception toHandle;
+    if (e instanceof ServiceUnavailableException) {
+      toHandle = (ServiceUnavailableException) e;
+      handler = TokenExceptionHandler.valueOf("ServiceUnavailableException");
+    } else if (e.getCause() instanceof ServiceUnavailableException) {
+      toHandle = (ServiceUnavailableException) e.getCause();
+      handler = TokenExceptionHandler.valueOf("ServiceUnavailableException");
+    } else if (e instanceof ClientProtocolException) {
+      toHandle = (ClientProtocolException) e;
+      handler = TokenExceptionHandler.valueOf("ClientProtocolException");
+    } else if ((e.getCause() != null) && e.getCause() instanceof AdminAuthException) {
+      toHandle = (AdminAuthException) e.getCause();
+      handler = TokenExceptionHandler.valueOf("AdminAuthException");
+    } else if ((e.getCause() != null) && e.getCause() instanceof AuthException) {
+      toHandle = (AuthException) e.getCause();
+      if (toHandle instanceof InvalidTokenException) {
+        FilterUtils.rejectToken(token);
+      }
+      handler = TokenExceptionHandler.valueOf("AuthException");
+    } else {
+      toHandle = e instanceof UncheckedExecutionException ? (UncheckedExecutionException) e
+        : new UncheckedExecutionException(e);
+      handler = TokenExceptionHandler.valueOf("UncheckedExecutionException");
+    }
+    handler.onException(toHandle, resp, token);
+  }
+
   private Map<String, String> getInputParams() {
     Map<String, String> inputParams = new HashMap<String, String>();
     if (appConfig.getServiceIds() != null) {
@@ -1,67 +1,436 @@
 package monasca.common.middleware;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
 import com.google.common.cache.*;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
-public class TokenCache<K, V> {
+/**
+ * A cache of token validations, held as parsed {@link AuthContext}s. Each entry expires at the
+ * earlier of the configured time to cache tokens and the expiry of the token itself, read from the
+ * validation response, so long-lived tokens are not re-validated more often than configured and
+ * tokens are never served past their expiry.
+ * <p/>
+ * Optionally, entries read within the refresh-ahead time of their expiry are revalidated in the
+ * background while the cached validation continues to be served, and when revalidating an expired
+ * entry fails because Keystone is unreachable the last good validation is served for up to the
+ * stale-if-error time, but never past the token's own expiry. A validation served stale is only
+ * revalidated again after a short retry interval, so that requests during an outage don't each
+ * wait for Keystone.
+ * <p/>
+ * Tokens are first offered to the {@link LocalTokenValidator}, if one is configured, and only
+ * validated with Keystone if it can't decide them. Validations go through the shared
+ * {@link CircuitBreaker}, if one is configured, so that while Keystone is down they fail fast with
+ * a {@link CircuitOpenException}.
+ * <p/>
+ * Entries are keyed by a SHA-256 digest of the token rather than the token itself, so large tokens
+ * take no more space than small ones, and the cache can be bounded by the estimated bytes held
+ * rather than the number of entries.
+ */
+public class TokenCache<K> {
 
-  private final LoadingCache<K, V> cache;
+  private static final HashFunction DIGEST = Hashing.sha256();
+  /** Estimated bytes held by each entry apart from its value: the digest, entry and holder */
+  private static final int ENTRY_WEIGHT = 200;
+  /** The time a validation served stale is served before it is revalidated again */
+  static final long STALE_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+  /** Reads the wall clock, as token expiries are compared with it */
+  static final Ticker WALL_CLOCK = new Ticker() {
+    @Override
+    public long read() {
+      return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+  };
+
+  private final Cache<HashCode, CachedToken> cache;
+  private final Ticker ticker;
+  private final Map<String, String> map;
+  private final long timeToExpireMillis;
+  private final long refreshAheadMillis;
+  private final long staleIfErrorMillis;
+  private final ExecutorService refreshExecutor;
+  private final CircuitBreaker breaker;
+  private final LocalTokenValidator localValidator;
+  /** Digests of the tokens being revalidated in the background */
+  private final Set<HashCode> refreshing =
+    Collections.newSetFromMap(new ConcurrentHashMap<HashCode, Boolean>());
   private final Config appConfig = Config.getInstance();
   private AuthClientFactory factory;
   private AuthClient client;
   private static final Logger logger = LoggerFactory
     .getLogger(TokenCache.class);
 
+  private final AtomicLong refreshCount = new AtomicLong();
+  private final AtomicLong refreshFailureCount = new AtomicLong();
+  private final AtomicLong staleServeCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+
+  /**
+   * Selects cached validations by their context and the times they were made.
+   */
+  public interface EntryFilter {
+    /**
+     * Returns whether the validation of the {@code context}, started at {@code validatedAt} and
+     * cached at {@code cachedAt} in milliseconds since the epoch, is selected.
+     */
+    boolean matches(AuthContext context, long validatedAt, long cachedAt);
+  }
+
+  /** A cached validation, the times at which it was made and the times at which it expires. */
+  static final class CachedToken {
+    final AuthContext value;
+    /** The time validation started, in milliseconds since the epoch. */
+    final long validatedAt;
+    /** The time the validation was cached, in milliseconds since the epoch. */
+    final long cachedAt;
+    /** Expiry of the cache entry in milliseconds since the epoch. */
+    final long expiresAt;
+    /** Expiry of the token itself in milliseconds since the epoch. */
+    final long tokenExpiresAt;
+    /** The time until which the validation may be served stale, in milliseconds since the epoch. */
+    final long staleUntil;
+
+    CachedToken(AuthContext value, long validatedAt, long cachedAt, long expiresAt,
+      long tokenExpiresAt, long staleUntil) {
+      this.value = value;
+      this.validatedAt = validatedAt;
+      this.cachedAt = cachedAt;
+      this.expiresAt = expiresAt;
+      this.tokenExpiresAt = tokenExpiresAt;
+      this.staleUntil = staleUntil;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+  }
 
   public TokenCache(final long maxSize, final long timeToExpire, final Map<String, String> map) {
+    this(maxSize, 0, timeToExpire, 0, 0, 0, map);
+  }
+
+  public TokenCache(final long maxSize, final long timeToExpire, final long refreshAheadTime,
+    final long staleIfErrorTime, final int refreshThreads, final Map<String, String> map) {
+    this(maxSize, 0, timeToExpire, refreshAheadTime, staleIfErrorTime, refreshThreads, map);
+  }
+
+  /**
+   * @param maxSize           the maximum number of cached tokens, used if maxBytes is 0
+   * @param maxBytes          the maximum estimated bytes held by cached tokens, or 0 to bound the
+   *                          cache by maxSize instead
+   * @param timeToExpire      the maximum time, in seconds, to cache a token
+   * @param refreshAheadTime  the time, in seconds, before expiry within which a read triggers a
+   *                          background revalidation, or 0 to disable refresh-ahead
+   * @param staleIfErrorTime  the time, in seconds, after expiry for which the last good validation
+   *                          is served while revalidation fails, or 0 to disable
+   * @param refreshThreads    the number of background revalidation threads
+   * @param map               the input parameters for v3 validation
+   */
+  public TokenCache(final long maxSize, final long maxBytes, final long timeToExpire,
+    final long refreshAheadTime, final long staleIfErrorTime, final int refreshThreads,
+    final Map<String, String> map) {
+    this(maxSize, maxBytes, timeToExpire, refreshAheadTime, staleIfErrorTime, refreshThreads, map,
+      WALL_CLOCK);
+  }
+
+  /**
+   * @param ticker  the source of the current time, in nanoseconds since the epoch, for entry and
+   *                token expiry
+   */
+  TokenCache(final long maxSize, final long maxBytes, final long timeToExpire,
+    final long refreshAheadTime, final long staleIfErrorTime, final int refreshThreads,
+    final Map<String, String> map, Ticker ticker) {
+    this.map = map;
+    this.ticker = ticker;
     factory = appConfig.getFactory();
+    breaker = appConfig.getCircuitBreaker();
+    localValidator = appConfig.getLocalValidator();
+    timeToExpireMillis = TimeUnit.SECONDS.toMillis(timeToExpire);
+    refreshAheadMillis = TimeUnit.SECONDS.toMillis(refreshAheadTime);
+    staleIfErrorMillis = TimeUnit.SECONDS.toMillis(staleIfErrorTime);
+
+    if (refreshAheadMillis > 0) {
+      refreshExecutor = Executors.newFixedThreadPool(Math.max(1, refreshThreads),
+        new ThreadFactoryBuilder().setNameFormat("token-cache-refresh-%d").setDaemon(true).build());
+    } else {
+      refreshExecutor = null;
+    }
+
+    // The configured time plus any stale window bounds every entry, while shorter lived tokens
+    // expire on read
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().ticker(ticker)
+      .expireAfterWrite(timeToExpireMillis + staleIfErrorMillis, TimeUnit.MILLISECONDS);
+    if (maxBytes > 0) {
+      cache = builder.maximumWeight(maxBytes).weigher(new Weigher<HashCode, CachedToken>() {
+        @Override
+        public int weigh(HashCode digest, CachedToken cached) {
+          return ENTRY_WEIGHT + cached.value.getWeight();
+        }
+      }).build();
+    } else {
+      cache = builder.maximumSize(maxSize).build();
+    }
+  }
+
+  /**
+   * Validates the {@code key} with the local validator, else Keystone.
+   */
+  private CachedToken load(K key) throws TException, ClientProtocolException {
+
+    Object response = null;
+    AuthClient client = null;
+    long validatedAt = now();
+
+    if (localValidator != null) {
+      AuthContext local = localValidator.validate((String) key);
+      if (local != null)
+        return cachedToken(local, validatedAt);
+    }
+    if (breaker != null && !breaker.allowRequest())
+      throw new CircuitOpenException("Authentication server unavailable, circuit breaker open");
+    try {
+      client = factory.getClient();
+      if (appConfig.getAuthVersion().equals("v2.0")) {
+        response = client.validateTokenForServiceEndpointV2((String) key, appConfig.getServiceIds(),
+          appConfig.getEndpointIds(), appConfig.isIncludeCatalog());
+      } else {
+        response = client.validateTokenForServiceEndpointV3((String) key, map);
+      }
+      if (breaker != null)
+        breaker.onSuccess();
+    } catch (RuntimeException | TException | ClientProtocolException e) {
+      if (breaker != null) {
+        if (isConnectionFailure(e))
+          breaker.onFailure();
+        else
+          breaker.onSuccess();
+      }
+      throw e;
+    } finally {
+      if (client != null)
+        factory.recycle(client);
+    }
+    // Parse the response once here rather than on every request that presents the token
+    return cachedToken(AuthContext.fromResponse((String) response, appConfig.isIncludeCatalog()),
+      validatedAt);
+  }
+
+  public AuthContext getToken(final K key) throws ClientProtocolException {
+    long now = now();
+    HashCode digest = digest(key);
+    CachedToken cached = cache.getIfPresent(digest);
+    if (cached != null && !cached.isExpired(now)) {
+      if (refreshExecutor != null && now >= cached.expiresAt - refreshAheadMillis) {
+        refresh(key, digest, cached);
+      }
+      return cached.value;
+    }
+
+    try {
+      if (cached != null) {
+        logger.debug("Cached token has expired, revalidating");
+        cache.asMap().remove(digest, cached);
+      }
+      // Guava coalesces concurrent loads of the same digest
+      return cache.get(digest, new Callable<CachedToken>() {
+        @Override
+        public CachedToken call() throws Exception {
+          return load(key);
+        }
+      }).value;
+    } catch (ExecutionException e) {
+      failureCount.incrementAndGet();
+      if (isStaleServable(cached, now, e.getCause()))
+        return serveStale(digest, cached, now);
+      logger.info("Failed to get token", e);
+      throw new ClientProtocolException(e.getMessage(), e);
+    } catch (UncheckedExecutionException e) {
+      failureCount.incrementAndGet();
+      if (isStaleServable(cached, now, e.getCause()))
+        return serveStale(digest, cached, now);
+      throw e;
+    }
+  }
+
+  public void put(K key, AuthContext value) {
+    cache.put(digest(key), cachedToken(value, now()));
+  }
+
+  /**
+   * Discards the cached validation of the {@code key}.
+   */
+  public void invalidate(K key) {
+    cache.invalidate(digest(key));
+  }
+
+  /**
+   * Returns the number of cached tokens.
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Discards the cached validations selected by the {@code filter}, returning the number
+   * discarded.
+   */
+  public int invalidateAll(EntryFilter filter) {
+    int invalidated = 0;
+    for (Iterator<CachedToken> it = cache.asMap().values().iterator(); it.hasNext();) {
+      CachedToken cached = it.next();
+      if (filter.matches(cached.value, cached.validatedAt, cached.cachedAt)) {
+        it.remove();
+        invalidated++;
+      }
+    }
+    return invalidated;
+  }
+
+  /**
+   * Returns the number of background revalidations started.
+   */
+  public long getRefreshCount() {
+    return refreshCount.get();
+  }
+
+  /**
+   * Returns the number of background revalidations that failed.
+   */
+  public long getRefreshFailureCount() {
+    return refreshFailureCount.get();
+  }
+
+  /**
+   * Returns the number of times a stale validation was served because revalidation failed.
+   */
+  public long getStaleServeCount() {
+    return staleServeCount.get();
+  }
 
-    cache = CacheBuilder.newBuilder().maximumSize(maxSize)
-      .expireAfterWrite(timeToExpire, TimeUnit.SECONDS)
-      .build(new CacheLoader<K, V>() {
-        public V load(K key) throws TException, ClientProtocolException {
+  /**
+   * Returns the number of foreground validations that failed, including those answered with a
+   * stale validation.
+   */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
 
-          V value = null;
-          AuthClient client = null;
+  /**
+   * Stops background revalidation.
+   */
+  public void shutdown() {
+    if (refreshExecutor != null)
+      refreshExecutor.shutdownNow();
+  }
+
+  /**
+   * Returns whether the {@code cached} validation may be served after revalidation failed with
+   * {@code cause}. Only failures to reach Keystone qualify; rejected tokens never do.
+   */
+  private boolean isStaleServable(CachedToken cached, long now, Throwable cause) {
+    if (cached == null || staleIfErrorMillis <= 0)
+      return false;
+    if (now >= cached.staleUntil || now >= cached.tokenExpiresAt)
+      return false;
+    return isConnectionFailure(cause);
+  }
+
+  /**
+   * Returns whether {@code e} is a failure to reach Keystone rather than a response from it,
+   * including failing to reach it to get the admin token.
+   */
+  private static boolean isConnectionFailure(Throwable e) {
+    return e instanceof ServiceUnavailableException || e instanceof AuthConnectionException
+      || e instanceof IOException || e instanceof TException
+      || e instanceof AdminAuthException && e.getCause() instanceof IOException;
+  }
+
+  private AuthContext serveStale(HashCode digest, CachedToken cached, long now) {
+    staleServeCount.incrementAndGet();
+    logger.warn("Failed to revalidate token, serving the last good validation");
+    // Serve the stale validation without revalidating it until the retry interval has passed
+    long retryAt = Math.min(now + STALE_RETRY_MILLIS, Math.min(cached.staleUntil,
+      cached.tokenExpiresAt));
+    cache.asMap().putIfAbsent(digest, new CachedToken(cached.value, cached.validatedAt,
+      cached.cachedAt, retryAt, cached.tokenExpiresAt, cached.staleUntil));
+    return cached.value;
+  }
 
+  /**
+   * Revalidates the {@code key} in the background, unless it is already being revalidated, while
+   * the {@code cached} validation continues to be served. The cached validation is kept if Keystone
+   * can't be reached, but discarded if Keystone rejects the token, and the token is then
+   * remembered as rejected.
+   */
+  private void refresh(final K key, final HashCode digest, final CachedToken cached) {
+    if (!refreshing.add(digest))
+      return;
+    try {
+      refreshExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          refreshCount.incrementAndGet();
           try {
-            client = factory.getClient();
-            if (appConfig.getAuthVersion().equals("v2.0")) {
-              value = (V) client.validateTokenForServiceEndpointV2((String) key, appConfig.getServiceIds(),
-                appConfig.getEndpointIds(), appConfig.isIncludeCatalog());
-            } else {
-              value = (V) client.validateTokenForServiceEndpointV3((String) key, map);
+            cache.put(digest, load(key));
+          } catch (Exception e) {
+            logger.info("Failed to refresh token", e);
+            if (!isConnectionFailure(e)) {
+              cache.asMap().remove(digest, cached);
+              if (e instanceof InvalidTokenException)
+                FilterUtils.rejectToken(key.toString());
             }
+            refreshFailureCount.incrementAndGet();
           } finally {
-            if (client != null)
-              factory.recycle(client);
+            refreshing.remove(digest);
           }
-          return value;
         }
       });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(digest);
+    }
   }
 
-  public V getToken(K key) throws ClientProtocolException {
-    V value = null;
-    try {
-      value = cache.get(key);
-    } catch (ExecutionException e) {
-      logger.info("Failed to get token", e);
-      throw new ClientProtocolException(e.getMessage(), e);
-    }
-    return value;
+  /**
+   * Returns the current time in milliseconds since the epoch.
+   */
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+  }
+
+  private static HashCode digest(Object key) {
+    return DIGEST.hashString(key.toString(), Charsets.UTF_8);
   }
 
-  public void put(K key, V value) {
-    cache.put(key, value);
+  private CachedToken cachedToken(AuthContext value, long validatedAt) {
+    long now = now();
+    long tokenExpiresAt = value.getExpiresAt();
+    long expiresAt = Math.min(now + timeToExpireMillis, tokenExpiresAt);
+    return new CachedToken(value, validatedAt, now, expiresAt, tokenExpiresAt,
+      expiresAt + staleIfErrorMillis);
   }
 
 }
@@ -0,0 +1,66 @@
+package monasca.common.middleware;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Utilities for reading the expiry of Keystone tokens.
+ */
+final class TokenExpiry {
+  /** Returned when a token's expiry is absent or cannot be parsed. */
+  static final long UNKNOWN = Long.MAX_VALUE;
+
+  private TokenExpiry() {
+  }
+
+  /**
+   * Returns the expiry, in milliseconds since the epoch, of the token in a v3 ({@code expires_at})
+   * or v2 ({@code expires}) validation response, else {@link #UNKNOWN}.
+   */
+  static long fromResponse(String json) {
+    try {
+      return fromResponse(new JsonParser().parse(json).getAsJsonObject());
+    } catch (RuntimeException e) {
+      return UNKNOWN;
+    }
+  }
+
+  /**
+   * Returns the expiry of the token in a parsed validation response, else {@link #UNKNOWN}.
+   */
+  static long fromResponse(JsonObject root) {
+    try {
+      JsonElement expires = null;
+      if (root.has("token"))
+        expires = root.getAsJsonObject("token").get("expires_at");
+      else if (root.has("access"))
+        expires = root.getAsJsonObject("access").getAsJsonObject("token").get("expires");
+      return expires == null || expires.isJsonNull() ? UNKNOWN : parse(expires.getAsString());
+    } catch (RuntimeException e) {
+      return UNKNOWN;
+    }
+  }
+
+  /**
+   * Returns the milliseconds since the epoch of a Keystone timestamp such as
+   * {@code 2014-11-13T02:34:59.953729Z}, else {@link #UNKNOWN} if it cannot be parsed. Timestamps
+   * without a zone are taken to be UTC.
+   */
+  static long parse(String timestamp) {
+    // SimpleDateFormat can't handle microseconds so take off the fraction
+    String normalized = timestamp.trim().replaceFirst("\\.\\d+", "");
+    if (normalized.endsWith("Z"))
+      normalized = normalized.substring(0, normalized.length() - 1) + "+00:00";
+    else if (normalized.length() == "yyyy-MM-ddTHH:mm:ss".length())
+      normalized += "+00:00";
+    try {
+      return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").parse(normalized).getTime();
+    } catch (ParseException e) {
+      return UNKNOWN;
+    }
+  }
+}
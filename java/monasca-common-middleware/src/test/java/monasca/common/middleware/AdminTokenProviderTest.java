@@ -0,0 +1,134 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class AdminTokenProviderTest {
+  private FakeTicker ticker;
+  private AdminTokenProvider provider;
+  private final AtomicInteger issued = new AtomicInteger();
+  /** The lifetime of the tokens issued, or 0 for tokens with an unreadable expiry */
+  private volatile long lifetime;
+  /** Holds back token requests until counted down */
+  private volatile CountDownLatch release;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    Configs.initialize(mock(AuthClientFactory.class), AuthConstants.ADMIN_AUTH_METHOD, "password",
+      AuthConstants.ADMIN_USER, "admin", AuthConstants.ADMIN_PASSWORD, "password");
+    ticker = new FakeTicker();
+    issued.set(0);
+    lifetime = TimeUnit.HOURS.toMillis(1);
+    release = new CountDownLatch(0);
+
+    HttpClient httpClient = mock(HttpClient.class);
+    when(httpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+      @Override
+      public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+        release.await();
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 201, "Created");
+        response.setHeader(AuthConstants.AUTH_SUBJECT_TOKEN, "token-" + issued.incrementAndGet());
+        response.setEntity(new StringEntity(lifetime == 0
+          ? "{\"token\":{\"expires_at\":\"soon\"}}"
+          : TokenCacheTest.response("admin", ticker.millis() + lifetime)));
+        return response;
+      }
+    });
+    provider = new AdminTokenProvider(httpClient, new URI("http://localhost:5000"), ticker);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    provider.shutdown();
+  }
+
+  public void shouldFetchOnceForConcurrentCallersOfExpiredToken() throws Exception {
+    assertEquals(provider.getToken(), "token-1");
+    ticker.advance(lifetime);
+    release = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> tokens = new ArrayList<>();
+      for (int i = 0; i < 8; i++)
+        tokens.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return provider.getToken();
+          }
+        }));
+      release.countDown();
+
+      for (Future<String> token : tokens)
+        assertEquals(token.get(5, TimeUnit.SECONDS), "token-2");
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(provider.getFetchCount(), 2);
+  }
+
+  public void shouldRefreshInBackgroundBeforeExpiry() throws Exception {
+    // Usable for a second past the expiry margin, so refreshed after half a second
+    lifetime = TimeUnit.SECONDS.toMillis(31);
+    assertEquals(provider.getToken(), "token-1");
+    lifetime = TimeUnit.HOURS.toMillis(1);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (provider.getToken().equals("token-1") && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+
+    assertEquals(provider.getToken(), "token-2");
+    assertEquals(provider.getFetchCount(), 2);
+    assertEquals(provider.getRefreshFailureCount(), 0);
+  }
+
+  public void shouldOnlyInvalidateCurrentToken() throws Exception {
+    assertEquals(provider.getToken(), "token-1");
+
+    provider.invalidate("token-0");
+    assertEquals(provider.getToken(), "token-1");
+    assertEquals(provider.getFetchCount(), 1);
+
+    provider.invalidate("token-1");
+    assertEquals(provider.getToken(), "token-2");
+    assertEquals(provider.getFetchCount(), 2);
+  }
+
+  public void shouldUseTokenWithUnreadableExpiryForFallbackLifetime() throws Exception {
+    lifetime = 0;
+    assertEquals(provider.getToken(), "token-1");
+    ticker.advance(AdminTokenProvider.UNKNOWN_EXPIRY_LIFETIME_MILLIS - 1);
+    assertEquals(provider.getToken(), "token-1");
+    assertEquals(provider.getFetchCount(), 1);
+
+    ticker.advance(1);
+    assertEquals(provider.getToken(), "token-2");
+    assertEquals(provider.getFetchCount(), 2);
+  }
+}
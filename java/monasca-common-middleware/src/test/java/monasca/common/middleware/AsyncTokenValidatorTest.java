@@ -0,0 +1,169 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.client.ClientProtocolException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+@Test
+public class AsyncTokenValidatorTest {
+  private AuthClient client;
+  private AsyncTokenValidator validator;
+  private ServletRequest request;
+  private HttpServletResponse response;
+  private AsyncContext asyncContext;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    client = mock(AuthClient.class);
+    AuthClientFactory factory = mock(AuthClientFactory.class);
+    when(factory.getClient()).thenReturn(client);
+    Configs.initialize(factory);
+    validator = new AsyncTokenValidator(1, 0, new RetryBackoff(10, 10));
+
+    request = mock(ServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    asyncContext = mock(AsyncContext.class);
+    when(request.startAsync(request, response)).thenReturn(asyncContext);
+    when(asyncContext.getRequest()).thenReturn(request);
+    when(asyncContext.getResponse()).thenReturn(response);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    validator.shutdown();
+  }
+
+  public void shouldDispatchValidatedRequests() throws Exception {
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenReturn(TokenCacheTest.response("user",
+      System.currentTimeMillis() + 3600000));
+
+    validator.validate("token", request, response);
+
+    verify(asyncContext, timeout(5000)).dispatch();
+    verify(request).setAttribute(eq(AsyncTokenValidator.VALIDATION_RESULT),
+      any(AuthContext.class));
+    verify(asyncContext, never()).complete();
+  }
+
+  public void shouldRespondToFailedValidationsWithoutDispatching() throws Exception {
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(new InvalidTokenException("Invalid token"));
+
+    validator.validate("token", request, response);
+
+    verify(asyncContext, timeout(5000)).complete();
+    verify(response).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+    verify(asyncContext, never()).dispatch();
+    verify(request, never()).setAttribute(eq(AsyncTokenValidator.VALIDATION_RESULT), any());
+  }
+
+  public void shouldCoalesceConcurrentValidationsOfSameToken() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenAnswer(new Answer<Object>() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          release.await();
+          return TokenCacheTest.response("user", System.currentTimeMillis() + 3600000);
+        }
+      });
+
+    ListenableFuture<Object> first = validator.validate("token");
+    ListenableFuture<Object> second = validator.validate("token");
+    release.countDown();
+
+    assertSame(second, first);
+    assertEquals(((AuthContext) first.get(5, TimeUnit.SECONDS)).getUserId(), "user");
+    assertEquals(validator.getValidationCount(), 1);
+    assertEquals(validator.getCoalescedCount(), 1);
+    verify(client, times(1)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+
+  public void shouldRetryFailedConnectionsAfterBackoff() throws Exception {
+    validator.shutdown();
+    validator = new AsyncTokenValidator(1, 2, new RetryBackoff(10, 10));
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(new ClientProtocolException("down")).thenReturn(
+      TokenCacheTest.response("user", System.currentTimeMillis() + 3600000));
+
+    Object result = validator.validate("token").get(5, TimeUnit.SECONDS);
+
+    assertEquals(((AuthContext) result).getUserId(), "user");
+    verify(client, times(2)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+
+  public void shouldRetryUnavailableServerAfterBackoff() throws Exception {
+    validator.shutdown();
+    validator = new AsyncTokenValidator(1, 2, new RetryBackoff(10, 10));
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(new ServiceUnavailableException("down")).thenReturn(
+      TokenCacheTest.response("user", System.currentTimeMillis() + 3600000));
+
+    Object result = validator.validate("token").get(5, TimeUnit.SECONDS);
+
+    assertEquals(((AuthContext) result).getUserId(), "user");
+    verify(client, times(2)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+
+  public void shouldNotRetryWhileCircuitIsOpen() throws Exception {
+    validator.shutdown();
+    validator = new AsyncTokenValidator(1, 2, new RetryBackoff(10, 10));
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(new CircuitOpenException("open"));
+
+    try {
+      validator.validate("token").get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().getCause() instanceof CircuitOpenException);
+    }
+    verify(client, times(1)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+
+  public void shouldFailOnceRetriesAreExhausted() throws Exception {
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(new ClientProtocolException("down"));
+
+    try {
+      validator.validate("token").get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ClientProtocolException);
+    }
+    verify(client, times(1)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+}
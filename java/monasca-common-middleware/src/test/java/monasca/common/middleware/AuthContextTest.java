@@ -0,0 +1,113 @@
+package monasca.common.middleware;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+@Test
+public class AuthContextTest {
+  private static AuthContext context(String userName, String role, String catalog) {
+    return AuthContext.fromResponse("{\"token\":{\"expires_at\":\"2099-01-01T00:00:00.000000Z\","
+      + "\"audit_ids\":[\"a1\"],\"user\":{\"id\":\"u1\",\"name\":\"" + userName
+      + "\",\"domain\":{}},\"roles\":[{\"name\":\"" + role + "\"}],\"catalog\":[" + catalog
+      + "]}}", true);
+  }
+
+  public void shouldNotWeighSharedValues() {
+    AuthContext small = context("user", "admin", "");
+    AuthContext large = context("user", "administrator-of-everything",
+      "{\"type\":\"monitoring\",\"endpoints\":[{\"url\":\"http://localhost:8070/v2.0\"}]}");
+
+    assertEquals(large.getWeight(), small.getWeight());
+  }
+
+  public void shouldWeighOwnValues() {
+    AuthContext shortName = context("user", "admin", "");
+    AuthContext longName = context("a-user-with-a-much-longer-name", "admin", "");
+
+    assertTrue(longName.getWeight() > shortName.getWeight());
+  }
+
+  private static AuthContext parse(String response, boolean includeCatalog) {
+    return AuthContext.fromResponse(response.replace('\'', '"'), includeCatalog);
+  }
+
+  private static final String V2_RESPONSE = "{'access':{'token':{'id':'t',"
+    + "'expires':'2099-01-01T00:00:00Z','tenant':{'id':'tenant-1','name':'tenant'}},"
+    + "'user':{'id':'user-1','name':'user','roles':[{'name':'admin','tenantId':'tenant-1'},"
+    + "{'name':'monitoring','tenantId':'tenant-1'},{'name':'domainadmin'}]},"
+    + "'serviceCatalog':[{'type':'monitoring'}]}}";
+
+  public void shouldSplitV2TenantAndHpIdmRoles() {
+    AuthContext context = parse(V2_RESPONSE, false);
+
+    assertEquals(context.getAttribute(AuthConstants.AUTH_TENANT_ID), "tenant-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_TENANT_NAME), "tenant");
+    assertEquals(context.getUserId(), "user-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_USER_NAME), "user");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_ROLES), "admin,monitoring");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_HP_IDM_ROLES), "domainadmin");
+    assertEquals(context.getProjectId(), "tenant-1");
+  }
+
+  public void shouldIncludeV2CatalogOnlyIfRequested() {
+    assertNull(parse(V2_RESPONSE, false).getAttribute(AuthConstants.AUTH_SERVICE_CATALOG));
+    assertEquals(parse(V2_RESPONSE, true).getAttribute(AuthConstants.AUTH_SERVICE_CATALOG),
+      "[{\"type\":\"monitoring\"}]");
+  }
+
+  private static String v3Response(String scope) {
+    return "{'token':{'expires_at':'2099-01-01T00:00:00.000000Z','issued_at':"
+      + "'2015-01-01T00:00:00.000000Z','audit_ids':['a1','c1']," + scope
+      + "'user':{'id':'user-1','name':'user','domain':{'id':'user-domain-1','name':'ud'}},"
+      + "'roles':[{'name':'admin'},{'name':'monitoring'}],'catalog':[{'type':'monitoring'}]}}";
+  }
+
+  public void shouldMapV3ProjectScope() {
+    AuthContext context = parse(v3Response("'project':{'id':'project-1','name':'project',"
+      + "'domain':{'id':'project-domain-1','name':'pd'}},"), false);
+
+    assertEquals(context.getProjectId(), "project-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_PROJECT_NAME), "project");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_PROJECT_DOMAIN_ID), "project-domain-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_PROJECT_DOMAIN_NAME), "pd");
+    assertNull(context.getAttribute(AuthConstants.AUTH_DOMAIN_ID));
+    assertEquals(context.getUserId(), "user-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_USER_DOMAIN_ID), "user-domain-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_USER_DOMAIN_NAME), "ud");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_ROLES), "admin,monitoring,");
+    assertEquals(context.getAuditIds(), Arrays.asList("a1", "c1"));
+    assertTrue(context.getIssuedAt() != AuthContext.UNKNOWN_ISSUED_AT);
+  }
+
+  public void shouldMapV3DomainScope() {
+    AuthContext context = parse(v3Response("'domain':{'id':'domain-1','name':'domain'},"), false);
+
+    assertEquals(context.getAttribute(AuthConstants.AUTH_DOMAIN_ID), "domain-1");
+    assertEquals(context.getAttribute(AuthConstants.AUTH_DOMAIN_NAME), "domain");
+    assertNull(context.getProjectId());
+    assertNull(context.getAttribute(AuthConstants.AUTH_PROJECT_NAME));
+  }
+
+  public void shouldOmitNullProjectDomainId() {
+    AuthContext context = parse(v3Response("'project':{'id':'project-1','name':'project',"
+      + "'domain':{'id':null,'name':'pd'}},"), false);
+
+    assertEquals(context.getProjectId(), "project-1");
+    assertFalse(context.getAttributes().containsKey(AuthConstants.AUTH_PROJECT_DOMAIN_ID));
+    assertEquals(context.getAttribute(AuthConstants.AUTH_PROJECT_DOMAIN_NAME), "pd");
+  }
+
+  public void shouldIncludeV3CatalogOnlyIfRequested() {
+    String response = v3Response("");
+
+    assertNull(parse(response, false).getAttribute(AuthConstants.AUTH_SERVICE_CATALOG));
+    assertEquals(parse(response, true).getAttribute(AuthConstants.AUTH_SERVICE_CATALOG),
+      "[{\"type\":\"monitoring\"}]");
+  }
+}
@@ -0,0 +1,100 @@
+package monasca.common.middleware;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test
+public class CircuitBreakerTest {
+  private static void call(CircuitBreaker breaker, boolean failure) {
+    assertTrue(breaker.allowRequest());
+    if (failure)
+      breaker.onFailure();
+    else
+      breaker.onSuccess();
+  }
+
+  public void shouldOpenWhenFailureRateReachesThreshold() {
+    CircuitBreaker breaker = new CircuitBreaker(50, 4, 4, 60000, 1);
+
+    call(breaker, false);
+    call(breaker, true);
+    call(breaker, false);
+    assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    call(breaker, true);
+
+    assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    assertEquals(breaker.getOpenCount(), 1);
+  }
+
+  public void shouldNotOpenBeforeMinimumCalls() {
+    CircuitBreaker breaker = new CircuitBreaker(50, 10, 3, 60000, 1);
+
+    call(breaker, true);
+    call(breaker, true);
+    assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    call(breaker, true);
+
+    assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+  }
+
+  public void shouldMeasureFailureRateOverSlidingWindow() {
+    CircuitBreaker breaker = new CircuitBreaker(75, 4, 4, 60000, 1);
+
+    call(breaker, true);
+    call(breaker, true);
+    call(breaker, false);
+    call(breaker, false);
+    // The oldest failures slide out of the window
+    call(breaker, false);
+    call(breaker, true);
+    call(breaker, false);
+
+    assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+  }
+
+  public void shouldRefuseCallsWhileOpen() {
+    CircuitBreaker breaker = new CircuitBreaker(100, 1, 1, 60000, 1);
+    call(breaker, true);
+
+    assertFalse(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    assertEquals(breaker.getRejectedCount(), 2);
+  }
+
+  public void shouldCloseAfterSuccessfulTrialCalls() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker(100, 1, 1, 50, 2);
+    call(breaker, true);
+    Thread.sleep(100);
+
+    assertTrue(breaker.allowRequest());
+    assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    breaker.onSuccess();
+    assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+    breaker.onSuccess();
+
+    assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    call(breaker, false);
+  }
+
+  public void shouldReopenWhenTrialCallFails() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker(100, 1, 1, 50, 1);
+    call(breaker, true);
+    Thread.sleep(100);
+
+    call(breaker, true);
+
+    assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    assertEquals(breaker.getOpenCount(), 2);
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectInvalidThreshold() {
+    new CircuitBreaker(0, 10, 5, 1000, 1);
+  }
+}
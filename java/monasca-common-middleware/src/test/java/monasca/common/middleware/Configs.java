@@ -0,0 +1,42 @@
+package monasca.common.middleware;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * Initializes the {@link Config} singleton for tests.
+ */
+final class Configs {
+  private Configs() {
+  }
+
+  /**
+   * Initializes the Config with the {@code params}, given as name and value pairs, and with the
+   * {@code factory} and a token cache validating through it.
+   */
+  static Config initialize(AuthClientFactory factory, String... params) throws Exception {
+    Map<String, String> values = new HashMap<>();
+    values.put(AuthConstants.SERVER_VIP, "localhost");
+    values.put(AuthConstants.SERVER_PORT, "5000");
+    for (int i = 0; i < params.length; i += 2)
+      values.put(params[i], params[i + 1]);
+
+    FilterConfig filterConfig = mock(FilterConfig.class);
+    when(filterConfig.getServletContext()).thenReturn(mock(ServletContext.class));
+    for (Map.Entry<String, String> value : values.entrySet())
+      when(filterConfig.getInitParameter(value.getKey())).thenReturn(value.getValue());
+
+    Config config = Config.getInstance();
+    config.initialize(filterConfig, null, new HashMap<String, String>());
+    config.setFactory(factory);
+    config.getClient().shutdown();
+    config.setClient(new TokenCache<String>(100, 600, new HashMap<String, String>()));
+    return config;
+  }
+}
@@ -0,0 +1,38 @@
+package monasca.common.middleware;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+
+/**
+ * A ticker reading a time since the epoch that only moves when advanced, for tests.
+ */
+final class FakeTicker extends Ticker {
+  private final AtomicLong nanos = new AtomicLong();
+
+  /**
+   * Starts the ticker at the current time rounded down to the second, as token expiries are read
+   * to the second.
+   */
+  FakeTicker() {
+    nanos.set(TimeUnit.SECONDS.toNanos(TimeUnit.MILLISECONDS.toSeconds(
+      System.currentTimeMillis())));
+  }
+
+  /**
+   * Returns the time in milliseconds since the epoch.
+   */
+  long millis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+  }
+
+  void advance(long millis) {
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  @Override
+  public long read() {
+    return nanos.get();
+  }
+}
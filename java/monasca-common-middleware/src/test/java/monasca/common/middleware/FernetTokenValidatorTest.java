@@ -0,0 +1,164 @@
+package monasca.common.middleware;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+@Test
+public class FernetTokenValidatorTest {
+  private static final long TTL = 3600;
+  private static final long KEY_CHECK_INTERVAL = 30;
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private File keyRepository;
+  private FakeTicker ticker;
+  private FernetTokenValidator validator;
+  private byte[] key;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    keyRepository = Files.createTempDirectory("fernet-keys").toFile();
+    key = addKey(0);
+    ticker = new FakeTicker();
+    validator = new FernetTokenValidator(ticker);
+    validator.init(keyRepository, TTL, KEY_CHECK_INTERVAL);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    for (File file : keyRepository.listFiles())
+      file.delete();
+    keyRepository.delete();
+  }
+
+  /**
+   * Writes a new key to the repository as Keystone does, and returns it.
+   */
+  private byte[] addKey(int index) throws Exception {
+    byte[] newKey = new byte[32];
+    RANDOM.nextBytes(newKey);
+    Files.write(new File(keyRepository, String.valueOf(index)).toPath(),
+      BaseEncoding.base64Url().encode(newKey).getBytes(Charsets.US_ASCII));
+    return newKey;
+  }
+
+  /**
+   * Returns a Fernet token of the {@code payload}, signed and encrypted with the {@code key}.
+   */
+  private String token(byte[] key, byte[] payload) throws Exception {
+    byte[] iv = new byte[16];
+    RANDOM.nextBytes(iv);
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, 16, 16, "AES"),
+      new IvParameterSpec(iv));
+    byte[] ciphertext = cipher.doFinal(payload);
+
+    ByteBuffer signed = ByteBuffer.allocate(1 + 8 + iv.length + ciphertext.length);
+    signed.put((byte) 0x80).putLong(TimeUnit.MILLISECONDS.toSeconds(ticker.millis())).put(iv)
+      .put(ciphertext);
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(key, 0, 16, "HmacSHA256"));
+    byte[] hmac = mac.doFinal(signed.array());
+
+    byte[] token = ByteBuffer.allocate(signed.capacity() + hmac.length).put(signed.array())
+      .put(hmac).array();
+    return BaseEncoding.base64Url().omitPadding().encode(token);
+  }
+
+  /**
+   * Returns a MessagePack payload like Keystone's, with an expiry unless it is null.
+   */
+  private static byte[] payload(Long expiresAt) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(expiresAt == null ? 0x92 : 0x93);
+    out.write(0x02);
+    byte[] userId = "user".getBytes(Charsets.UTF_8);
+    out.write(0xc4);
+    out.write(userId.length);
+    out.write(userId, 0, userId.length);
+    if (expiresAt != null) {
+      out.write(0xcb);
+      byte[] expiry = ByteBuffer.allocate(8).putDouble(expiresAt / 1000.0).array();
+      out.write(expiry, 0, expiry.length);
+    }
+    return out.toByteArray();
+  }
+
+  public void shouldLeaveUnexpiredTokensToServer() throws Exception {
+    assertNull(validator.validate(token(key, payload(ticker.millis() + 60000))));
+  }
+
+  @Test(expectedExceptions = InvalidTokenException.class)
+  public void shouldRejectExpiredTokens() throws Exception {
+    String token = token(key, payload(ticker.millis() + 60000));
+    ticker.advance(60000);
+
+    validator.validate(token);
+  }
+
+  @Test(expectedExceptions = InvalidTokenException.class)
+  public void shouldExpireTokensWithoutExpiryAfterTtl() throws Exception {
+    String token = token(key, payload(null));
+    ticker.advance(TimeUnit.SECONDS.toMillis(TTL) - 1);
+    assertNull(validator.validate(token));
+    ticker.advance(1);
+
+    validator.validate(token);
+  }
+
+  @Test(expectedExceptions = InvalidTokenException.class)
+  public void shouldRejectTamperedTokens() throws Exception {
+    byte[] token = BaseEncoding.base64Url().omitPadding().decode(token(key,
+      payload(ticker.millis() + 60000)));
+    token[token.length - 1] ^= 1;
+
+    validator.validate(BaseEncoding.base64Url().omitPadding().encode(token));
+  }
+
+  @Test(expectedExceptions = InvalidTokenException.class)
+  public void shouldRejectTokensSignedWithUnknownKeys() throws Exception {
+    byte[] unknown = new byte[32];
+    RANDOM.nextBytes(unknown);
+
+    validator.validate(token(unknown, payload(ticker.millis() + 60000)));
+  }
+
+  public void shouldLoadRotatedKeysAfterCheckInterval() throws Exception {
+    byte[] rotated = addKey(1);
+    ticker.advance(TimeUnit.SECONDS.toMillis(KEY_CHECK_INTERVAL));
+
+    assertNull(validator.validate(token(rotated, payload(ticker.millis() + 60000))));
+    assertEquals(validator.getKeyCount(), 2);
+  }
+
+  public void shouldLeaveOtherTokenFormatsToServer() {
+    assertNull(validator.validate("8a5e3c2b4f6d41e0a9b7c6d5e4f3a2b1"));
+    assertNull(validator.validate("not a token"));
+  }
+
+  public void shouldLeaveTokensToServerWhileNoKeysCanBeRead() throws Exception {
+    new File(keyRepository, "0").delete();
+    ticker.advance(TimeUnit.SECONDS.toMillis(KEY_CHECK_INTERVAL));
+
+    assertNull(validator.validate(token(key, payload(ticker.millis() + 60000))));
+    assertEquals(validator.getKeyCount(), 0);
+  }
+}
@@ -0,0 +1,57 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.net.URI;
+import java.util.HashMap;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class HttpAuthClientTest {
+  private HttpClient httpClient;
+  private HttpAuthClient client;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    Configs.initialize(mock(AuthClientFactory.class));
+    httpClient = mock(HttpClient.class);
+    URI uri = new URI("http://localhost:5000");
+    client = new HttpAuthClient(httpClient, uri, new AdminTokenProvider(httpClient, uri));
+  }
+
+  private void respond(int status, String reason) throws Exception {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, reason);
+    response.setEntity(new StringEntity("{}"));
+    when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(response);
+  }
+
+  public void shouldRejectUnknownTokensWithoutQuotingThem() throws Exception {
+    respond(404, "Not Found");
+
+    try {
+      client.validateTokenForServiceEndpointV3("secret-token", new HashMap<String, String>());
+      fail();
+    } catch (InvalidTokenException e) {
+      assertFalse(e.getMessage().contains("secret-token"));
+    }
+  }
+
+  @Test(expectedExceptions = ServiceUnavailableException.class)
+  public void shouldTreatServerErrorsAsUnavailable() throws Exception {
+    respond(502, "Bad Gateway");
+
+    client.validateTokenForServiceEndpointV3("token", new HashMap<String, String>());
+  }
+}
@@ -0,0 +1,104 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.HashMap;
+
+import javax.servlet.FilterConfig;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+@Test
+public class LocalTokenValidatorTest {
+  private AuthClient client;
+  private AuthClientFactory factory;
+  private TokenCache<String> cache;
+
+  /** Validates "local" tokens, rejects "invalid" tokens and leaves others to the server */
+  public static class TestValidator implements LocalTokenValidator {
+    static AuthContext context;
+    boolean initialized;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+      initialized = true;
+    }
+
+    @Override
+    public AuthContext validate(String token) {
+      if (token.equals("invalid"))
+        throw new InvalidTokenException("Invalid token");
+      return token.equals("local") ? context : null;
+    }
+  }
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    client = mock(AuthClient.class);
+    factory = mock(AuthClientFactory.class);
+    when(factory.getClient()).thenReturn(client);
+    TestValidator.context = AuthContext.fromResponse(TokenCacheTest.response("local",
+      System.currentTimeMillis() + 3600000), false);
+    Configs.initialize(factory, AuthConstants.LOCAL_TOKEN_VALIDATOR,
+      TestValidator.class.getName());
+    cache = new TokenCache<>(100, 600, new HashMap<String, String>());
+  }
+
+  @AfterMethod
+  protected void afterMethod() throws Exception {
+    cache.shutdown();
+    Configs.initialize(factory);
+  }
+
+  public void shouldInstantiateConfiguredValidator() throws Exception {
+    LocalTokenValidator validator = Config.getInstance().getLocalValidator();
+
+    assertTrue(validator instanceof TestValidator);
+    assertTrue(((TestValidator) validator).initialized);
+  }
+
+  public void shouldNotKeepValidatorOnceUnconfigured() throws Exception {
+    Configs.initialize(factory);
+
+    assertNull(Config.getInstance().getLocalValidator());
+  }
+
+  public void shouldUseLocalValidationWithoutServer() throws Exception {
+    assertSame(cache.getToken("local"), TestValidator.context);
+
+    verify(factory, never()).getClient();
+  }
+
+  public void shouldValidateWithServerWhenValidatorUndecided() throws Exception {
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenReturn(TokenCacheTest.response("remote",
+      System.currentTimeMillis() + 3600000));
+
+    assertEquals(cache.getToken("remote").getUserId(), "remote");
+  }
+
+  public void shouldRejectLocallyInvalidTokensWithoutServer() throws Exception {
+    try {
+      cache.getToken("invalid");
+      fail();
+    } catch (UncheckedExecutionException e) {
+      assertTrue(e.getCause() instanceof InvalidTokenException);
+    }
+
+    verify(factory, never()).getClient();
+  }
+}
@@ -0,0 +1,52 @@
+package monasca.common.middleware;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test
+public class RejectedTokenCacheTest {
+  public void shouldRememberRejectedTokens() {
+    RejectedTokenCache cache = new RejectedTokenCache(10, 30);
+
+    cache.reject("bogus");
+
+    assertTrue(cache.isRejected("bogus"));
+    assertFalse(cache.isRejected("valid"));
+  }
+
+  public void shouldForgetRejectionsAfterTimeToExpire() {
+    FakeTicker ticker = new FakeTicker();
+    RejectedTokenCache cache = new RejectedTokenCache(10, 30, ticker);
+    cache.reject("bogus");
+
+    ticker.advance(29999);
+    assertTrue(cache.isRejected("bogus"));
+    ticker.advance(1);
+    assertFalse(cache.isRejected("bogus"));
+  }
+
+  public void shouldBoundRejections() {
+    RejectedTokenCache cache = new RejectedTokenCache(10, 30);
+
+    for (int i = 0; i < 100; i++)
+      cache.reject("bogus-" + i);
+
+    assertTrue(cache.size() <= 10);
+    assertTrue(cache.isRejected("bogus-99"));
+  }
+
+  public void shouldHoldDigestsOfLongTokens() {
+    StringBuilder token = new StringBuilder();
+    for (int i = 0; i < 10000; i++)
+      token.append('x');
+    RejectedTokenCache cache = new RejectedTokenCache(10, 30);
+
+    cache.reject(token.toString());
+
+    assertTrue(cache.isRejected(token.toString()));
+    assertEquals(cache.size(), 1);
+  }
+}
@@ -0,0 +1,45 @@
+package monasca.common.middleware;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test
+public class RetryBackoffTest {
+  private static void assertDelayBetween(RetryBackoff backoff, int attempt, long min, long max) {
+    for (int i = 0; i < 100; i++) {
+      long delay = backoff.delay(attempt);
+      assertTrue(delay >= min && delay <= max, "Delay " + delay + " for attempt " + attempt);
+    }
+  }
+
+  public void shouldDoubleDelayForEachAttempt() {
+    RetryBackoff backoff = new RetryBackoff(100, 10000);
+
+    assertDelayBetween(backoff, 0, 50, 100);
+    assertDelayBetween(backoff, 1, 100, 200);
+    assertDelayBetween(backoff, 3, 400, 800);
+  }
+
+  public void shouldCapDelayAtMaximum() {
+    RetryBackoff backoff = new RetryBackoff(100, 300);
+
+    assertDelayBetween(backoff, 5, 150, 300);
+    assertDelayBetween(backoff, Integer.MAX_VALUE, 150, 300);
+  }
+
+  public void shouldNotDelayWhenInitialDelayIsZero() {
+    RetryBackoff backoff = new RetryBackoff(0, 1000);
+
+    assertEquals(backoff.delay(0), 0);
+    assertEquals(backoff.delay(10), 0);
+  }
+
+  public void shouldRaiseMaximumToInitialDelay() {
+    RetryBackoff backoff = new RetryBackoff(200, 100);
+
+    assertDelayBetween(backoff, 0, 100, 200);
+    assertDelayBetween(backoff, 4, 100, 200);
+  }
+}
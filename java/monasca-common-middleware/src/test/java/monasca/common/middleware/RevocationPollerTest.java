@@ -0,0 +1,207 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import monasca.common.middleware.RevocationPoller.RevocationEvent;
+
+@Test
+public class RevocationPollerTest {
+  private AuthClient client;
+  private AuthClientFactory factory;
+  private TokenCache<String> cache;
+  private RevocationPoller poller;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    client = mock(AuthClient.class, withSettings().extraInterfaces(RevocationEventClient.class));
+    factory = mock(AuthClientFactory.class);
+    when(factory.getClient()).thenReturn(client);
+    Configs.initialize(factory);
+    cache = new TokenCache<>(100, 600, new HashMap<String, String>());
+    poller = new RevocationPoller(cache, factory, 60, 600);
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    cache.shutdown();
+    poller.shutdown();
+  }
+
+  private static String format(long millis) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(new Date(millis));
+  }
+
+  /** Returns a v3 token validation response with the attributes events revoke by */
+  private static String response(String userId, String projectId, long issuedAt,
+    String... auditIds) {
+    StringBuilder audit = new StringBuilder();
+    for (String auditId : auditIds)
+      audit.append(audit.length() == 0 ? "" : ",").append('"').append(auditId).append('"');
+    return "{\"token\":{\"expires_at\":\"" + format(System.currentTimeMillis() + 3600000)
+      + "\",\"issued_at\":\"" + format(issuedAt) + "\",\"audit_ids\":[" + audit + "],"
+      + (projectId == null ? "" : "\"project\":{\"id\":\"" + projectId
+        + "\",\"name\":\"p\",\"domain\":{\"id\":\"d\"}},")
+      + "\"user\":{\"id\":\"" + userId + "\",\"name\":\"n\",\"domain\":{}}}}";
+  }
+
+  private static AuthContext context(String userId, String projectId, String... auditIds) {
+    return AuthContext.fromResponse(response(userId, projectId, System.currentTimeMillis()
+      - 60000, auditIds), false);
+  }
+
+  /** Returns a revocation event with the {@code fields}, given as name and value pairs */
+  private static String event(String... fields) {
+    StringBuilder event = new StringBuilder("{\"issued_before\":\"")
+      .append(format(System.currentTimeMillis())).append("\",\"revoked_at\":\"")
+      .append(format(System.currentTimeMillis())).append('"');
+    for (int i = 0; i < fields.length; i += 2)
+      event.append(",\"").append(fields[i]).append("\":\"").append(fields[i + 1]).append('"');
+    return event.append('}').toString();
+  }
+
+  private static RevocationEvent revocationEvent(String... fields) {
+    JsonObject event = new JsonParser().parse(event(fields)).getAsJsonObject();
+    return new RevocationEvent(event, System.currentTimeMillis());
+  }
+
+  private void respondEvents(String... events) throws Exception {
+    StringBuilder response = new StringBuilder("{\"events\":[");
+    for (int i = 0; i < events.length; i++)
+      response.append(i == 0 ? "" : ",").append(events[i]);
+    when(((RevocationEventClient) client).getRevocationEvents(anyString())).thenReturn(
+      response.append("]}").toString());
+  }
+
+  public void shouldRevokeByUserAndProject() {
+    RevocationEvent event = revocationEvent("user_id", "u1", "project_id", "p1");
+
+    assertTrue(event.apply(context("u1", "p1")));
+    assertFalse(event.apply(context("u2", "p1")));
+    assertFalse(event.apply(context("u1", "p2")));
+  }
+
+  public void shouldNotRevokeUnscopedTokensByProject() {
+    assertFalse(revocationEvent("project_id", "p1").apply(context("u1", null)));
+  }
+
+  public void shouldRevokeByAuditIds() {
+    RevocationEvent token = revocationEvent("audit_id", "a1");
+    RevocationEvent chain = revocationEvent("audit_chain_id", "c1");
+
+    assertTrue(token.apply(context("u1", "p1", "a1", "c1")));
+    assertFalse(token.apply(context("u1", "p1", "a2", "c1")));
+    assertTrue(chain.apply(context("u1", "p1", "a2", "c1")));
+    assertFalse(chain.apply(context("u1", "p1", "a1", "c2")));
+    // Validations without audit ids can't be told apart
+    assertTrue(token.apply(context("u1", "p1")));
+  }
+
+  public void shouldNotRevokeTokensIssuedAfterEvent() {
+    RevocationEvent event = revocationEvent("user_id", "u1");
+    AuthContext issuedAfter = AuthContext.fromResponse(response("u1", "p1",
+      System.currentTimeMillis() + 60000), false);
+
+    assertFalse(event.apply(issuedAfter));
+  }
+
+  public void shouldRevokeByUnknownAttributesAsIfMatched() {
+    assertTrue(revocationEvent("role_id", "r1").apply(context("u1", "p1")));
+  }
+
+  public void shouldReapplyOnlyToValidationsInFlightWhenApplied() {
+    RevocationEvent event = revocationEvent();
+
+    assertTrue(event.reapplies(event.appliedAt - 10, event.appliedAt));
+    assertTrue(event.reapplies(event.appliedAt - 10, event.appliedAt + 10));
+    assertFalse(event.reapplies(event.appliedAt - 10, event.appliedAt - 1));
+    assertFalse(event.reapplies(event.appliedAt, event.appliedAt + 10));
+  }
+
+  public void shouldDiscardRevokedValidations() throws Exception {
+    cache.put("t1", context("u1", "p1"));
+    cache.put("t2", context("u2", "p1"));
+    respondEvents(event("user_id", "u1"));
+
+    assertEquals(poller.poll(), 1);
+    assertEquals(cache.size(), 1);
+    assertEquals(poller.getInvalidatedCount(), 1);
+  }
+
+  public void shouldApplyEventsToCachedValidationsOnce() throws Exception {
+    respondEvents(event("user_id", "u1"));
+    assertEquals(poller.poll(), 0);
+    Thread.sleep(10);
+    cache.put("t1", context("u1", "p1"));
+
+    // The same event received again, then no events
+    assertEquals(poller.poll(), 0);
+    respondEvents();
+    assertEquals(poller.poll(), 0);
+    assertEquals(cache.size(), 1);
+  }
+
+  public void shouldDiscardValidationsInFlightWhenEventApplied() throws Exception {
+    respondEvents(event("user_id", "u1"));
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenAnswer(new Answer<Object>() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          Thread.sleep(10);
+          poller.poll();
+          return response("u1", "p1", System.currentTimeMillis() - 60000);
+        }
+      });
+
+    AuthContext context = cache.getToken("t1");
+    assertSame(cache.getToken("t1"), context);
+    respondEvents();
+
+    assertEquals(poller.poll(), 1);
+    assertEquals(cache.size(), 0);
+  }
+
+  public void shouldKeepValidationsMadeAfterEventApplied() throws Exception {
+    respondEvents(event("user_id", "u1"));
+    poller.poll();
+    respondEvents();
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenReturn(response("u1", "p1", System.currentTimeMillis() - 60000));
+    Thread.sleep(10);
+
+    AuthContext context = cache.getToken("t1");
+
+    assertEquals(poller.poll(), 0);
+    assertSame(cache.getToken("t1"), context);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void shouldRequireRevocationEventClient() throws Exception {
+    when(factory.getClient()).thenReturn(mock(AuthClient.class));
+
+    poller.poll();
+  }
+}
@@ -0,0 +1,137 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertTrue;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class TokenAuthTest {
+  private AuthClient client;
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+  private FilterChain chain;
+  private AuthClientFactory factory;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    client = mock(AuthClient.class);
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(new InvalidTokenException("Invalid token"));
+    factory = mock(AuthClientFactory.class);
+    when(factory.getClient()).thenReturn(client);
+    Configs.initialize(factory);
+
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    chain = mock(FilterChain.class);
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getHeader(AuthConstants.TOKEN)).thenReturn("token");
+    when(request.getAttribute(AsyncTokenValidator.VALIDATION_RESULT)).thenReturn(
+      AuthContext.fromResponse(TokenCacheTest.response("user",
+        System.currentTimeMillis() + 3600000), false));
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    AsyncTokenValidator asyncValidator = Config.getInstance().getAsyncValidator();
+    if (asyncValidator != null)
+      asyncValidator.shutdown();
+  }
+
+  public void shouldRefuseRecentlyRejectedTokensWithoutValidation() throws Exception {
+    FilterUtils.rejectToken("token");
+
+    new TokenAuth().doFilter(request, response, chain);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+    verify(client, never()).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+    verify(chain, never()).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+  }
+
+  public void shouldRememberTokensRejectedByServer() throws Exception {
+    new TokenAuth().doFilter(request, response, chain);
+    new TokenAuth().doFilter(request, response, chain);
+
+    assertTrue(FilterUtils.isRejectedToken("token"));
+    verify(client, times(1)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+    verify(response, times(2)).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+  }
+
+  public void shouldRetryUnavailableServer() throws Exception {
+    Configs.initialize(factory, AuthConstants.CONN_TIMEOUT_RETRIES, "2",
+      AuthConstants.PAUSE_BETWEEN_RETRIES, "1");
+    doThrow(new ServiceUnavailableException("down")).doReturn(TokenCacheTest.response("user",
+      System.currentTimeMillis() + 3600000)).when(client).validateTokenForServiceEndpointV3(
+      anyString(), anyMapOf(String.class, String.class));
+
+    new TokenAuth().doFilter(request, response, chain);
+
+    verify(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+    verify(client, times(2)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+
+  public void shouldNotRetryWhileCircuitIsOpen() throws Exception {
+    Configs.initialize(factory, AuthConstants.CONN_TIMEOUT_RETRIES, "2",
+      AuthConstants.PAUSE_BETWEEN_RETRIES, "1");
+    doThrow(new CircuitOpenException("open")).when(client).validateTokenForServiceEndpointV3(
+      anyString(), anyMapOf(String.class, String.class));
+
+    new TokenAuth().doFilter(request, response, chain);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), startsWith("open"));
+    verify(client, times(1)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+    verify(chain, never()).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+  }
+
+  public void shouldNotUseServlet3MethodsWhenAsyncValidationIsOff() throws Exception {
+    new TokenAuth().doFilter(request, response, chain);
+
+    verify(request, never()).getDispatcherType();
+    verify(request, never()).isAsyncSupported();
+    verify(response).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+  }
+
+  public void shouldAcceptValidationResultOnAsyncDispatch() throws Exception {
+    Configs.initialize(factory, AuthConstants.ASYNC_VALIDATION, "true");
+    when(request.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+
+    new TokenAuth().doFilter(request, response, chain);
+
+    verify(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+    verify(response, never()).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+  }
+
+  public void shouldIgnoreValidationResultOutsideAsyncDispatch() throws Exception {
+    Configs.initialize(factory, AuthConstants.ASYNC_VALIDATION, "true");
+    when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+
+    new TokenAuth().doFilter(request, response, chain);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+    verify(chain, never()).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+  }
+}
@@ -0,0 +1,274 @@
+package monasca.common.middleware;
+
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+@Test
+public class TokenCacheTest {
+  private AuthClient client;
+  private AuthClientFactory factory;
+  private FakeTicker ticker;
+  private TokenCache<String> cache;
+
+  @BeforeMethod
+  protected void beforeMethod() throws Exception {
+    client = mock(AuthClient.class);
+    factory = mock(AuthClientFactory.class);
+    when(factory.getClient()).thenReturn(client);
+    Configs.initialize(factory);
+    ticker = new FakeTicker();
+  }
+
+  @AfterMethod
+  protected void afterMethod() {
+    if (cache != null)
+      cache.shutdown();
+  }
+
+  static String response(String userId, long expiresAt) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return "{\"token\":{\"expires_at\":\"" + format.format(new Date(expiresAt))
+      + "\",\"user\":{\"id\":\"" + userId + "\",\"name\":\"n\",\"domain\":{}}}}";
+  }
+
+  private void respond(Object response) throws Exception {
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenReturn(response);
+  }
+
+  private void failWith(RuntimeException e) throws Exception {
+    when(client.validateTokenForServiceEndpointV3(anyString(), anyMapOf(String.class,
+      String.class))).thenThrow(e);
+  }
+
+  private void verifyValidations(int count) throws Exception {
+    verify(client, times(count)).validateTokenForServiceEndpointV3(anyString(),
+      anyMapOf(String.class, String.class));
+  }
+
+  private long inOneHour() {
+    return ticker.millis() + 3600000;
+  }
+
+  private TokenCache<String> cache(long timeToExpire, long refreshAheadTime,
+    long staleIfErrorTime) {
+    return new TokenCache<>(100, 0, timeToExpire, refreshAheadTime, staleIfErrorTime, 1,
+      new HashMap<String, String>(), ticker);
+  }
+
+  /**
+   * Waits for background refreshes to have failed {@code count} times.
+   */
+  private void awaitRefreshFailures(long count) throws InterruptedException {
+    for (int i = 0; i < 500 && cache.getRefreshFailureCount() < count; i++)
+      Thread.sleep(10);
+    assertEquals(cache.getRefreshFailureCount(), count);
+  }
+
+  public void shouldCacheValidations() throws Exception {
+    cache = cache(600, 0, 0);
+    respond(response("user", inOneHour()));
+
+    AuthContext context = cache.getToken("token");
+
+    assertEquals(context.getUserId(), "user");
+    assertSame(cache.getToken("token"), context);
+    verifyValidations(1);
+  }
+
+  public void shouldExpireAtTimeToCacheToken() throws Exception {
+    cache = cache(1, 0, 0);
+    respond(response("user", inOneHour()));
+
+    cache.getToken("token");
+    ticker.advance(999);
+    cache.getToken("token");
+    verifyValidations(1);
+    ticker.advance(1);
+    cache.getToken("token");
+
+    verifyValidations(2);
+  }
+
+  public void shouldExpireAtTokenExpiry() throws Exception {
+    cache = cache(600, 0, 0);
+    respond(response("user", ticker.millis() + 2000));
+
+    cache.getToken("token");
+    ticker.advance(1999);
+    cache.getToken("token");
+    verifyValidations(1);
+    ticker.advance(1);
+    cache.getToken("token");
+
+    verifyValidations(2);
+  }
+
+  public void shouldRefreshAheadOfExpiry() throws Exception {
+    cache = cache(2, 1, 0);
+    respond(response("user", inOneHour()));
+    AuthContext context = cache.getToken("token");
+    respond(response("refreshed", inOneHour()));
+
+    ticker.advance(1000);
+    // Served from the cache while it is refreshed in the background
+    assertSame(cache.getToken("token"), context);
+    for (int i = 0; i < 500 && cache.getToken("token") == context; i++)
+      Thread.sleep(10);
+
+    assertEquals(cache.getToken("token").getUserId(), "refreshed");
+    assertEquals(cache.getRefreshCount(), 1);
+    verifyValidations(2);
+  }
+
+  public void shouldKeepValidationWhenRefreshFails() throws Exception {
+    cache = cache(2, 1, 0);
+    respond(response("user", inOneHour()));
+    AuthContext context = cache.getToken("token");
+    failWith(new ServiceUnavailableException("down"));
+
+    ticker.advance(1000);
+    cache.getToken("token");
+
+    awaitRefreshFailures(1);
+    assertSame(cache.getToken("token"), context);
+  }
+
+  public void shouldDiscardValidationWhenRefreshRejectsToken() throws Exception {
+    cache = cache(2, 1, 0);
+    respond(response("user", inOneHour()));
+    cache.getToken("token");
+    failWith(new InvalidTokenException("revoked"));
+
+    ticker.advance(1000);
+    cache.getToken("token");
+
+    awaitRefreshFailures(1);
+    assertEquals(cache.size(), 0);
+    assertTrue(FilterUtils.isRejectedToken("token"));
+  }
+
+  public void shouldServeStaleWhenKeystoneIsUnreachable() throws Exception {
+    cache = cache(1, 0, 10);
+    respond(response("user", inOneHour()));
+    AuthContext context = cache.getToken("token");
+    failWith(new ServiceUnavailableException("down"));
+
+    ticker.advance(1000);
+    assertSame(cache.getToken("token"), context);
+    // Served stale again without waiting for Keystone until the retry interval has passed
+    ticker.advance(TokenCache.STALE_RETRY_MILLIS - 1);
+    assertSame(cache.getToken("token"), context);
+    assertEquals(cache.getStaleServeCount(), 1);
+    verifyValidations(2);
+
+    ticker.advance(1);
+    assertSame(cache.getToken("token"), context);
+    assertEquals(cache.getStaleServeCount(), 2);
+    verifyValidations(3);
+  }
+
+  public void shouldServeStaleWhenAdminTokenCannotBeFetched() throws Exception {
+    cache = cache(1, 0, 10);
+    respond(response("user", inOneHour()));
+    AuthContext context = cache.getToken("token");
+    failWith(new AdminAuthException("Failure authenticating adminUser", new IOException("down")));
+
+    ticker.advance(1000);
+
+    assertSame(cache.getToken("token"), context);
+    assertEquals(cache.getStaleServeCount(), 1);
+  }
+
+  public void shouldOpenCircuitBreakerWhenKeystoneIsUnreachable() throws Exception {
+    Configs.initialize(factory, AuthConstants.CIRCUIT_BREAKER_FAILURE_RATE, "50",
+      AuthConstants.CIRCUIT_BREAKER_MINIMUM_CALLS, "2");
+    cache = cache(600, 0, 0);
+    failWith(new ServiceUnavailableException("Authentication server unavailable via HTTP 503"));
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.getToken("token-" + i);
+        fail();
+      } catch (UncheckedExecutionException e) {
+        assertTrue(e.getCause() instanceof ServiceUnavailableException);
+      }
+    }
+    try {
+      cache.getToken("token");
+      fail();
+    } catch (UncheckedExecutionException e) {
+      assertTrue(e.getCause() instanceof CircuitOpenException);
+    }
+    verifyValidations(2);
+  }
+
+  public void shouldNotServeStalePastTokenExpiry() throws Exception {
+    cache = cache(600, 0, 10);
+    respond(response("user", ticker.millis() + 2000));
+    cache.getToken("token");
+    failWith(new ServiceUnavailableException("down"));
+
+    ticker.advance(2000);
+    try {
+      cache.getToken("token");
+      fail();
+    } catch (UncheckedExecutionException e) {
+      assertTrue(e.getCause() instanceof ServiceUnavailableException);
+    }
+    assertEquals(cache.getStaleServeCount(), 0);
+  }
+
+  public void shouldNotServeStalePastStaleIfErrorTime() throws Exception {
+    cache = cache(1, 0, 10);
+    respond(response("user", inOneHour()));
+    cache.getToken("token");
+    failWith(new ServiceUnavailableException("down"));
+
+    ticker.advance(11000);
+    try {
+      cache.getToken("token");
+      fail();
+    } catch (UncheckedExecutionException e) {
+      assertTrue(e.getCause() instanceof ServiceUnavailableException);
+    }
+    assertEquals(cache.getStaleServeCount(), 0);
+  }
+
+  public void shouldNotServeStaleRejectedTokens() throws Exception {
+    cache = cache(1, 0, 10);
+    respond(response("user", inOneHour()));
+    cache.getToken("token");
+    failWith(new InvalidTokenException("revoked"));
+
+    ticker.advance(1000);
+    try {
+      cache.getToken("token");
+      fail();
+    } catch (UncheckedExecutionException e) {
+      assertTrue(e.getCause() instanceof InvalidTokenException);
+    }
+    assertEquals(cache.getStaleServeCount(), 0);
+  }
+}
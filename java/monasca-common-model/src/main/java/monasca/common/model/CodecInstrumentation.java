@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+
+/**
+ * Optional instrumentation of the model codecs and expression parsers. When enabled, each
+ * instrumented operation records a timer, a histogram of payload sizes and a meter of failures in
+ * the caller-supplied {@link MetricRegistry}, named after the operation, for example
+ * {@code monasca.common.model.metric.Metrics.fromJson.time}. Instrumentation is disabled by default
+ * and can be toggled at any time; while disabled each operation costs a single volatile read.
+ */
+public final class CodecInstrumentation {
+  /** Start time returned by {@link Operation#start()} while instrumentation is disabled. */
+  public static final long DISABLED = Long.MIN_VALUE;
+
+  private static volatile MetricRegistry registry;
+
+  private CodecInstrumentation() {
+  }
+
+  /** Instruments for an operation in a particular registry. */
+  private static final class Instruments {
+    final MetricRegistry registry;
+    final Timer timer;
+    final Histogram payloadSize;
+    final Meter errors;
+
+    Instruments(MetricRegistry registry, String name) {
+      this.registry = registry;
+      timer = registry.timer(MetricRegistry.name(name, "time"));
+      payloadSize = registry.histogram(MetricRegistry.name(name, "payload-size"));
+      errors = registry.meter(MetricRegistry.name(name, "errors"));
+    }
+  }
+
+  /**
+   * An instrumented operation. Callers bracket the operation with {@link #start()} and either
+   * {@link #success(long, int)} or {@link #failure(long)}:
+   * 
+   * <pre>
+   * long start = FROM_JSON.start();
+   * try {
+   *   T result = ...;
+   *   FROM_JSON.success(start, json.length);
+   *   return result;
+   * } catch (RuntimeException e) {
+   *   FROM_JSON.failure(start);
+   *   throw e;
+   * }
+   * </pre>
+   */
+  public static final class Operation {
+    private final String name;
+    private volatile Instruments instruments;
+
+    private Operation(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Returns the start time of the operation, else {@link #DISABLED} if instrumentation is
+     * disabled.
+     */
+    public long start() {
+      return registry == null ? DISABLED : System.nanoTime();
+    }
+
+    /**
+     * Records the successful completion of the operation started at {@code start} for a payload
+     * of {@code payloadSize}.
+     */
+    public void success(long start, int payloadSize) {
+      if (start == DISABLED)
+        return;
+      Instruments current = instruments();
+      if (current != null) {
+        current.timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        current.payloadSize.update(payloadSize);
+      }
+    }
+
+    /**
+     * Records the failure of the operation started at {@code start}.
+     */
+    public void failure(long start) {
+      if (start == DISABLED)
+        return;
+      Instruments current = instruments();
+      if (current != null)
+        current.errors.mark();
+    }
+
+    @Nullable
+    private Instruments instruments() {
+      MetricRegistry current = registry;
+      if (current == null)
+        return null;
+      Instruments result = instruments;
+      if (result == null || result.registry != current) {
+        result = new Instruments(current, name);
+        instruments = result;
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * Returns an operation named after the {@code owner} and {@code name}.
+   */
+  public static Operation operation(Class<?> owner, String name) {
+    return new Operation(MetricRegistry.name(owner, name));
+  }
+
+  /**
+   * Enables instrumentation, recording into the {@code metricRegistry}.
+   */
+  public static void enable(MetricRegistry metricRegistry) {
+    registry = Preconditions.checkNotNull(metricRegistry, "metricRegistry");
+  }
+
+  /**
+   * Disables instrumentation. Instruments already registered remain in their registry.
+   */
+  public static void disable() {
+    registry = null;
+  }
+
+  public static boolean isEnabled() {
+    return registry != null;
+  }
+}
@@ -17,7 +17,9 @@
 package monasca.common.model;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Utilities for working with services.
@@ -71,4 +73,22 @@ public class Services {
     ServiceInfo serviceInfo = INFO.get(service);
     return serviceInfo == null || serviceInfo.getSupportedMetricNames().contains(metricName);
   }
+
+  /**
+   * Returns the dimension names supported for the {@code service}, else {@code null} if the
+   * {@code service} places no restriction on dimension names.
+   */
+  public static Set<String> getSupportedDimensionNames(String service) {
+    ServiceInfo serviceInfo = INFO.get(service);
+    return serviceInfo == null ? null : new HashSet<>(serviceInfo.getSupportedDimensions());
+  }
+
+  /**
+   * Returns the metric names supported for the {@code service}, else {@code null} if the
+   * {@code service} places no restriction on metric names.
+   */
+  public static Set<String> getSupportedMetricNames(String service) {
+    ServiceInfo serviceInfo = INFO.get(service);
+    return serviceInfo == null ? null : new HashSet<>(serviceInfo.getSupportedMetricNames());
+  }
 }
@@ -27,12 +27,17 @@ import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import monasca.common.model.CodecInstrumentation;
 import monasca.common.util.Stack;
 
 /**
  * Alarm expression value object.
  */
 public class AlarmExpression {
+  private static final CodecInstrumentation.Operation PARSE = CodecInstrumentation.operation(
+      AlarmExpression.class, "parse");
+
   private final String expression;
   /** Postfix list of expression elements. */
   private final List<Object> elements;
@@ -45,6 +50,17 @@ public class AlarmExpression {
    */
   public AlarmExpression(String expression) {
     this.expression = expression;
+    long start = PARSE.start();
+    try {
+      elements = parse(expression);
+      PARSE.success(start, expression.length());
+    } catch (RuntimeException e) {
+      PARSE.failure(start);
+      throw e;
+    }
+  }
+
+  private static List<Object> parse(String expression) {
     AlarmExpressionParser parser = new AlarmExpressionParser(new CommonTokenStream(
         new AlarmExpressionLexer(new ANTLRInputStream(expression))));
     parser.removeErrorListeners();
@@ -54,7 +70,7 @@ public class AlarmExpression {
     AlarmSubExpressionListener listener = new AlarmSubExpressionListener(false);
     ParseTreeWalker walker = new ParseTreeWalker();
     walker.walk(listener, tree);
-    elements = listener.getElements();
+    return listener.getElements();
   }
 
   /**
@@ -23,6 +23,7 @@ import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import monasca.common.model.CodecInstrumentation;
 import monasca.common.model.alarm.AlarmExpressionLexer;
 import monasca.common.model.alarm.AlarmExpressionParser;
 import monasca.common.model.metric.MetricDefinition;
@@ -38,6 +39,8 @@ public class AlarmSubExpression implements Serializable {
   private static final long serialVersionUID = -7458129503846747592L;
   public static final int DEFAULT_PERIOD = 60;
   public static final int DEFAULT_PERIODS = 1;
+  private static final CodecInstrumentation.Operation PARSE = CodecInstrumentation.operation(
+      AlarmSubExpression.class, "parse");
 
   private AggregateFunction function;
   private MetricDefinition metricDefinition;
@@ -86,6 +89,18 @@ public class AlarmSubExpression implements Serializable {
    */
   @JsonCreator
   public static AlarmSubExpression of(String expression) {
+    long start = PARSE.start();
+    try {
+      AlarmSubExpression subExpression = parse(expression);
+      PARSE.success(start, expression.length());
+      return subExpression;
+    } catch (RuntimeException e) {
+      PARSE.failure(start);
+      throw e;
+    }
+  }
+
+  private static AlarmSubExpression parse(String expression) {
     AlarmExpressionParser parser = new AlarmExpressionParser(new CommonTokenStream(
         new AlarmExpressionLexer(new ANTLRInputStream(expression))));
     parser.removeErrorListeners();
@@ -102,9 +117,7 @@ public class AlarmSubExpression implements Serializable {
   public boolean equals(Object obj) {
     if (this == obj)
       return true;
-    if (obj == null)
-      return false;
-    if (getClass() != obj.getClass())
+    if (!(obj instanceof AlarmSubExpression))
       return false;
     AlarmSubExpression other = (AlarmSubExpression) obj;
     if (function != other.function)
@@ -212,12 +225,25 @@ public class AlarmSubExpression implements Serializable {
     result = prime * result + ((operator == null) ? 0 : operator.hashCode());
     result = prime * result + period;
     result = prime * result + periods;
-    long temp;
-    temp = threshold.hashCode();
-    result = prime * result + (int) (temp ^ (temp >>> 32));
+    result = prime * result + thresholdHashCode(threshold);
     return result;
   }
 
+  /**
+   * Returns a hash code for the {@code threshold} that is consistent with {@link #equals(Object)},
+   * which considers numerically equal thresholds such as "5" and "5.0" equal.
+   */
+  static int thresholdHashCode(String threshold) {
+    if (threshold == null)
+      return 0;
+    try {
+      long bits = Double.doubleToLongBits(Double.parseDouble(threshold) + 0.0);
+      return (int) (bits ^ (bits >>> 32));
+    } catch (NumberFormatException e) {
+      return threshold.hashCode();
+    }
+  }
+
   public void setFunction(AggregateFunction function) {
     this.function = function;
   }
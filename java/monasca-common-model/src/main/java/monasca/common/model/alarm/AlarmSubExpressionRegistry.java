@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.alarm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A registry that canonicalizes identical sub-expressions across alarms and counts their
+ * references, so that a single window and a single evaluation can serve every alarm that uses a
+ * sub-expression. Each distinct sub-expression is represented by one
+ * {@link ImmutableAlarmSubExpression}, which remains registered while at least one alarm references
+ * it.
+ *
+ * <p>
+ * Registrations are applied serially while reads are lock-free.
+ */
+public class AlarmSubExpressionRegistry {
+  /** Canonical sub-expressions keyed by themselves, so any equal sub-expression finds its entry. */
+  private final ConcurrentMap<AlarmSubExpression, Entry> entries = new ConcurrentHashMap<>();
+  /** Immutable lists of canonical sub-expressions keyed by alarm id. */
+  private final ConcurrentMap<String, List<ImmutableAlarmSubExpression>> alarms =
+      new ConcurrentHashMap<>();
+
+  private static final class Entry {
+    final ImmutableAlarmSubExpression subExpression;
+    /** Immutable set of referencing alarm ids, replaced on write. */
+    volatile Set<String> alarmIds = Collections.emptySet();
+
+    Entry(ImmutableAlarmSubExpression subExpression) {
+      this.subExpression = subExpression;
+    }
+  }
+
+  /**
+   * Registers the sub-expressions of the {@code expression} for the alarm with the
+   * {@code alarmId}. See {@link #register(String, Collection)}.
+   */
+  public List<ImmutableAlarmSubExpression> register(String alarmId, AlarmExpression expression) {
+    return register(alarmId, expression.getSubExpressions());
+  }
+
+  /**
+   * Registers the {@code subExpressions} as referenced by the alarm with the {@code alarmId},
+   * replacing any sub-expressions previously registered for the alarm, and returns their canonical
+   * instances in the same order.
+   */
+  public synchronized List<ImmutableAlarmSubExpression> register(String alarmId,
+      Collection<? extends AlarmSubExpression> subExpressions) {
+    Preconditions.checkNotNull(alarmId, "alarmId");
+    List<ImmutableAlarmSubExpression> previous = alarms.get(alarmId);
+    List<ImmutableAlarmSubExpression> canonical = new ArrayList<>(subExpressions.size());
+    for (AlarmSubExpression subExpression : subExpressions) {
+      Entry entry = entries.get(subExpression);
+      if (entry == null) {
+        entry = new Entry(ImmutableAlarmSubExpression.copyOf(subExpression));
+        entries.put(entry.subExpression, entry);
+      }
+      if (!entry.alarmIds.contains(alarmId))
+        entry.alarmIds = with(entry.alarmIds, alarmId);
+      canonical.add(entry.subExpression);
+    }
+
+    alarms.put(alarmId, Collections.unmodifiableList(canonical));
+    if (previous != null) {
+      Set<ImmutableAlarmSubExpression> retained = new HashSet<>(canonical);
+      for (ImmutableAlarmSubExpression subExpression : previous)
+        if (!retained.contains(subExpression))
+          release(alarmId, subExpression);
+    }
+    return alarms.get(alarmId);
+  }
+
+  /**
+   * Removes the references of the alarm with the {@code alarmId}, returning the sub-expressions
+   * that are no longer referenced by any alarm and whose windows can therefore be discarded.
+   */
+  public synchronized List<ImmutableAlarmSubExpression> unregister(String alarmId) {
+    List<ImmutableAlarmSubExpression> previous = alarms.remove(alarmId);
+    if (previous == null)
+      return Collections.emptyList();
+    List<ImmutableAlarmSubExpression> released = new ArrayList<>();
+    for (ImmutableAlarmSubExpression subExpression : new LinkedHashSet<>(previous))
+      if (release(alarmId, subExpression))
+        released.add(subExpression);
+    return released;
+  }
+
+  /**
+   * Returns the canonical instance of the {@code subExpression} else null if no alarm references
+   * it.
+   */
+  @Nullable
+  public ImmutableAlarmSubExpression get(AlarmSubExpression subExpression) {
+    Entry entry = entries.get(subExpression);
+    return entry == null ? null : entry.subExpression;
+  }
+
+  /**
+   * Returns the immutable set of ids of the alarms that reference the {@code subExpression}.
+   */
+  public Set<String> getAlarmIds(AlarmSubExpression subExpression) {
+    Entry entry = entries.get(subExpression);
+    return entry == null ? Collections.<String>emptySet() : entry.alarmIds;
+  }
+
+  /**
+   * Returns the number of alarms that reference the {@code subExpression}.
+   */
+  public int getReferenceCount(AlarmSubExpression subExpression) {
+    return getAlarmIds(subExpression).size();
+  }
+
+  /**
+   * Returns the immutable list of canonical sub-expressions registered for the alarm with the
+   * {@code alarmId}.
+   */
+  public List<ImmutableAlarmSubExpression> getSubExpressions(String alarmId) {
+    List<ImmutableAlarmSubExpression> subExpressions = alarms.get(alarmId);
+    return subExpressions == null ? Collections.<ImmutableAlarmSubExpression>emptyList()
+        : subExpressions;
+  }
+
+  /**
+   * Returns an unmodifiable, live view of the canonical sub-expressions referenced by any alarm.
+   */
+  public Set<AlarmSubExpression> getAll() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /**
+   * Returns the number of distinct sub-expressions referenced by any alarm.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes the reference of the {@code alarmId} to the {@code subExpression}, returning whether
+   * the sub-expression is no longer referenced and was removed.
+   */
+  private boolean release(String alarmId, ImmutableAlarmSubExpression subExpression) {
+    Entry entry = entries.get(subExpression);
+    if (entry == null)
+      return false;
+    Set<String> alarmIds = new HashSet<>(entry.alarmIds);
+    alarmIds.remove(alarmId);
+    if (alarmIds.isEmpty()) {
+      entries.remove(subExpression);
+      return true;
+    }
+    entry.alarmIds = Collections.unmodifiableSet(alarmIds);
+    return false;
+  }
+
+  private static Set<String> with(Set<String> alarmIds, String alarmId) {
+    Set<String> result = new HashSet<>(alarmIds);
+    result.add(alarmId);
+    return Collections.unmodifiableSet(result);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.alarm;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import monasca.common.model.metric.MetricDefinition;
+
+/**
+ * An immutable AlarmSubExpression whose hash code and expression text are computed once, making it
+ * a cheap key for maps of sub-alarms. Instances are equal to, and hash the same as, mutable
+ * AlarmSubExpressions with the same values so the two can be used interchangeably as keys. The
+ * setters inherited from AlarmSubExpression throw {@link UnsupportedOperationException}, the
+ * metric definition holds an unmodifiable copy of the dimensions, and
+ * {@link #getMetricDefinition()} returns a copy of the metric definition, as its fields are public.
+ */
+public final class ImmutableAlarmSubExpression extends AlarmSubExpression {
+  private static final long serialVersionUID = 2936515408624823785L;
+
+  /** Derived state, recomputed on deserialization since enum hash codes vary across JVMs. */
+  private final transient int hashCode;
+  private final transient String expression;
+  /** The numeric threshold, else NaN if the threshold is not numeric. */
+  private final transient double numericThreshold;
+
+  private ImmutableAlarmSubExpression(AlarmSubExpression subExpression) {
+    super(Preconditions.checkNotNull(subExpression.getFunction(), "function"),
+        copyOf(Preconditions.checkNotNull(subExpression.getMetricDefinition(),
+            "metricDefinition")), Preconditions.checkNotNull(subExpression.getOperator(),
+            "operator"), Preconditions.checkNotNull(subExpression.getThreshold(), "threshold"),
+        subExpression.getPeriod(), subExpression.getPeriods());
+    hashCode = super.hashCode();
+    expression = super.getExpression();
+    numericThreshold = parseThreshold(getThreshold());
+  }
+
+  /**
+   * Returns an immutable copy of the {@code subExpression}, or the {@code subExpression} itself if
+   * it is already immutable.
+   */
+  public static ImmutableAlarmSubExpression copyOf(AlarmSubExpression subExpression) {
+    if (subExpression instanceof ImmutableAlarmSubExpression)
+      return (ImmutableAlarmSubExpression) subExpression;
+    return new ImmutableAlarmSubExpression(subExpression);
+  }
+
+  /**
+   * Returns an ImmutableAlarmSubExpression for the {@code expression} string.
+   * 
+   * @throws IllegalArgumentException if the {@code expression} is invalid
+   */
+  public static ImmutableAlarmSubExpression of(String expression) {
+    return new ImmutableAlarmSubExpression(AlarmSubExpression.of(expression));
+  }
+
+  private static MetricDefinition copyOf(MetricDefinition metricDefinition) {
+    Map<String, String> dimensions = metricDefinition.dimensions == null ? null : Collections
+        .unmodifiableMap(new LinkedHashMap<>(metricDefinition.dimensions));
+    return new MetricDefinition(metricDefinition.name, dimensions);
+  }
+
+  private static double parseThreshold(String threshold) {
+    try {
+      return Double.parseDouble(threshold);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  @Override
+  public boolean evaluate(double value) {
+    if (Double.isNaN(numericThreshold))
+      return super.evaluate(value);
+    return getOperator().evaluate(value, numericThreshold);
+  }
+
+  /**
+   * Returns the sub-alarm's expression.
+   */
+  @Override
+  public String getExpression() {
+    return expression;
+  }
+
+  /**
+   * Returns a copy of the metric definition, so that reassigning its fields can't change this
+   * sub-expression after its hash code was computed.
+   */
+  @Override
+  public MetricDefinition getMetricDefinition() {
+    MetricDefinition metricDefinition = super.getMetricDefinition();
+    // The dimensions are already unmodifiable, so they are shared
+    return new MetricDefinition(metricDefinition.name, metricDefinition.dimensions);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public void setFunction(AggregateFunction function) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setMetricDefinition(MetricDefinition metricDefinition) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setOperator(AlarmOperator operator) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setPeriod(int period) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setPeriods(int periods) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setThreshold(String threshold) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setThreshold(double threshold) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+  private Object readResolve() {
+    return new ImmutableAlarmSubExpression(this);
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import monasca.common.model.alarm.AlarmSubExpression;
+import monasca.common.model.metric.MetricDefinition;
+
+/**
+ * A concurrent, in-memory registry of alarm definitions that is kept current by applying alarm
+ * definition and alarm events incrementally. Alongside the definitions the registry maintains an
+ * index of sub-expressions by metric name for matching incoming metrics.
+ *
+ * <p>
+ * Events are applied serially while reads are lock-free. Reads return the registry's immutable
+ * state directly, without copying.
+ */
+public class AlarmDefinitionRegistry {
+  private final ConcurrentMap<String, AlarmDefinition> definitions = new ConcurrentHashMap<>();
+  /** Immutable sub-expression lists keyed by metric name, replaced on write. */
+  private final ConcurrentMap<String, List<SubExpression>> index = new ConcurrentHashMap<>();
+  /** Alarm ids keyed by alarm definition id. */
+  private final ConcurrentMap<String, Set<String>> alarms = new ConcurrentHashMap<>();
+  private final Set<String> alarmIds = Collections.newSetFromMap(
+      new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * An immutable view of a registered alarm definition.
+   */
+  public static final class AlarmDefinition {
+    public final String id;
+    public final String tenantId;
+    public final String name;
+    public final String description;
+    public final String expression;
+    public final String severity;
+    public final boolean actionsEnabled;
+    public final List<String> matchBy;
+    /** Sub-expressions keyed by sub-expression id. */
+    public final Map<String, AlarmSubExpression> subExpressions;
+
+    AlarmDefinition(String id, String tenantId, String name, String description,
+        String expression, String severity, boolean actionsEnabled, @Nullable List<String> matchBy,
+        Map<String, AlarmSubExpression> subExpressions) {
+      this.id = id;
+      this.tenantId = tenantId;
+      this.name = name;
+      this.description = description;
+      this.expression = expression;
+      this.severity = severity;
+      this.actionsEnabled = actionsEnabled;
+      this.matchBy = matchBy == null ? Collections.<String>emptyList()
+          : Collections.unmodifiableList(new ArrayList<>(matchBy));
+      this.subExpressions = Collections.unmodifiableMap(subExpressions);
+    }
+
+    @Override
+    public String toString() {
+      return "AlarmDefinition [id=" + id + ", tenantId=" + tenantId + ", name=" + name
+          + ", expression=" + expression + "]";
+    }
+  }
+
+  /**
+   * A sub-expression of a registered alarm definition.
+   */
+  public static final class SubExpression {
+    public final String alarmDefinitionId;
+    public final String id;
+    public final AlarmSubExpression expression;
+
+    SubExpression(String alarmDefinitionId, String id, AlarmSubExpression expression) {
+      this.alarmDefinitionId = alarmDefinitionId;
+      this.id = id;
+      this.expression = expression;
+    }
+
+    /**
+     * Returns whether the {@code metric} is matched by this sub-expression's metric definition.
+     */
+    public boolean matches(MetricDefinition metric) {
+      MetricDefinition definition = expression.getMetricDefinition();
+      if (!definition.name.equals(metric.name))
+        return false;
+      if (definition.dimensions == null || definition.dimensions.isEmpty())
+        return true;
+      if (metric.dimensions == null)
+        return false;
+      for (Map.Entry<String, String> dimension : definition.dimensions.entrySet())
+        if (!dimension.getValue().equals(metric.dimensions.get(dimension.getKey())))
+          return false;
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "SubExpression [alarmDefinitionId=" + alarmDefinitionId + ", id=" + id
+          + ", expression=" + expression + "]";
+    }
+  }
+
+  /**
+   * Registers the created alarm definition.
+   */
+  public synchronized void apply(AlarmDefinitionCreatedEvent event) {
+    AlarmDefinition definition = new AlarmDefinition(event.alarmDefinitionId, event.tenantId,
+        event.alarmName, event.alarmDescription, event.alarmExpression, null, true, event.matchBy,
+        copyOf(event.alarmSubExpressions));
+    replace(definition);
+  }
+
+  /**
+   * Applies the changed, new and removed sub-expressions of the updated alarm definition. Updates
+   * for unknown alarm definitions register the definition.
+   */
+  public synchronized void apply(AlarmDefinitionUpdatedEvent event) {
+    AlarmDefinition current = definitions.get(event.alarmDefinitionId);
+    Map<String, AlarmSubExpression> subExpressions = current == null ? copyOf(
+        event.unchangedSubExpressions) : new HashMap<>(current.subExpressions);
+    if (event.oldAlarmSubExpressions != null)
+      for (String subExpressionId : event.oldAlarmSubExpressions.keySet())
+        subExpressions.remove(subExpressionId);
+    if (event.changedSubExpressions != null)
+      subExpressions.putAll(event.changedSubExpressions);
+    if (event.newAlarmSubExpressions != null)
+      subExpressions.putAll(event.newAlarmSubExpressions);
+
+    replace(new AlarmDefinition(event.alarmDefinitionId, event.tenantId, event.alarmName,
+        event.alarmDescription, event.alarmExpression, event.severity, event.alarmActionsEnabled,
+        event.matchBy, subExpressions));
+  }
+
+  /**
+   * Removes the deleted alarm definition and forgets its alarms.
+   */
+  public synchronized void apply(AlarmDefinitionDeletedEvent event) {
+    AlarmDefinition removed = definitions.remove(event.alarmDefinitionId);
+    if (removed != null)
+      unindex(removed);
+    Set<String> definitionAlarms = alarms.remove(event.alarmDefinitionId);
+    if (definitionAlarms != null)
+      alarmIds.removeAll(definitionAlarms);
+  }
+
+  /**
+   * Records the created alarm.
+   */
+  public synchronized void apply(AlarmCreatedEvent event) {
+    alarmIds.add(event.alarmId);
+  }
+
+  /**
+   * Forgets the deleted alarm.
+   */
+  public synchronized void apply(AlarmDeletedEvent event) {
+    alarmIds.remove(event.alarmId);
+    if (event.alarmDefinitionId != null) {
+      Set<String> definitionAlarms = alarms.get(event.alarmDefinitionId);
+      if (definitionAlarms != null)
+        definitionAlarms.remove(event.alarmId);
+    }
+  }
+
+  /**
+   * Associates the alarm for {@code alarmId} with the alarm definition for
+   * {@code alarmDefinitionId}, so that it is forgotten when the definition is deleted.
+   */
+  public synchronized void addAlarm(String alarmDefinitionId, String alarmId) {
+    Set<String> definitionAlarms = alarms.get(alarmDefinitionId);
+    if (definitionAlarms == null) {
+      definitionAlarms = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      alarms.put(alarmDefinitionId, definitionAlarms);
+    }
+    definitionAlarms.add(alarmId);
+    alarmIds.add(alarmId);
+  }
+
+  /**
+   * Returns the alarm definition for the {@code alarmDefinitionId} else null.
+   */
+  @Nullable
+  public AlarmDefinition get(String alarmDefinitionId) {
+    return definitions.get(alarmDefinitionId);
+  }
+
+  /**
+   * Returns an unmodifiable, live view of all registered alarm definitions.
+   */
+  public Collection<AlarmDefinition> getAll() {
+    return Collections.unmodifiableCollection(definitions.values());
+  }
+
+  /**
+   * Returns whether the alarm for the {@code alarmId} is known.
+   */
+  public boolean containsAlarm(String alarmId) {
+    return alarmIds.contains(alarmId);
+  }
+
+  /**
+   * Returns an unmodifiable view of the alarm ids associated with the {@code alarmDefinitionId}.
+   */
+  public Set<String> getAlarmIds(String alarmDefinitionId) {
+    Set<String> definitionAlarms = alarms.get(alarmDefinitionId);
+    return definitionAlarms == null ? Collections.<String>emptySet() : Collections
+        .unmodifiableSet(definitionAlarms);
+  }
+
+  /**
+   * Returns the immutable list of sub-expressions for metrics named {@code metricName}.
+   */
+  public List<SubExpression> getSubExpressions(String metricName) {
+    List<SubExpression> subExpressions = index.get(metricName);
+    return subExpressions == null ? Collections.<SubExpression>emptyList() : subExpressions;
+  }
+
+  /**
+   * Returns the sub-expressions whose metric definitions match the {@code metric}.
+   */
+  public List<SubExpression> match(MetricDefinition metric) {
+    List<SubExpression> candidates = index.get(metric.name);
+    if (candidates == null)
+      return Collections.emptyList();
+    List<SubExpression> matches = new ArrayList<>();
+    for (SubExpression candidate : candidates)
+      if (candidate.matches(metric))
+        matches.add(candidate);
+    return matches;
+  }
+
+  /**
+   * Returns the number of registered alarm definitions.
+   */
+  public int size() {
+    return definitions.size();
+  }
+
+  private void replace(AlarmDefinition definition) {
+    Preconditions.checkNotNull(definition.id, "alarmDefinitionId");
+    AlarmDefinition previous = definitions.put(definition.id, definition);
+    reindex(definition.id, previous, definition);
+  }
+
+  private void unindex(AlarmDefinition definition) {
+    reindex(definition.id, definition, null);
+  }
+
+  /**
+   * Replaces the indexed sub-expressions of the {@code previous} definition with those of the
+   * {@code current} one, publishing each affected metric name's list with a single write so that
+   * readers never see the definition's sub-expressions partially indexed.
+   */
+  private void reindex(String alarmDefinitionId, @Nullable AlarmDefinition previous,
+      @Nullable AlarmDefinition current) {
+    Map<String, List<SubExpression>> added = new HashMap<>();
+    if (current != null)
+      for (Map.Entry<String, AlarmSubExpression> entry : current.subExpressions.entrySet()) {
+        String metricName = entry.getValue().getMetricDefinition().name;
+        List<SubExpression> subExpressions = added.get(metricName);
+        if (subExpressions == null) {
+          subExpressions = new ArrayList<>();
+          added.put(metricName, subExpressions);
+        }
+        subExpressions.add(new SubExpression(alarmDefinitionId, entry.getKey(), entry.getValue()));
+      }
+
+    Set<String> metricNames = new HashSet<>(added.keySet());
+    if (previous != null)
+      for (AlarmSubExpression subExpression : previous.subExpressions.values())
+        metricNames.add(subExpression.getMetricDefinition().name);
+
+    for (String metricName : metricNames) {
+      List<SubExpression> subExpressions = new ArrayList<>();
+      for (SubExpression candidate : getSubExpressions(metricName))
+        if (!candidate.alarmDefinitionId.equals(alarmDefinitionId))
+          subExpressions.add(candidate);
+      List<SubExpression> additions = added.get(metricName);
+      if (additions != null)
+        subExpressions.addAll(additions);
+      if (subExpressions.isEmpty())
+        index.remove(metricName);
+      else
+        index.put(metricName, Collections.unmodifiableList(subExpressions));
+    }
+  }
+
+  private static Map<String, AlarmSubExpression> copyOf(
+      @Nullable Map<String, AlarmSubExpression> subExpressions) {
+    return subExpressions == null ? new HashMap<String, AlarmSubExpression>() : new HashMap<>(
+        subExpressions);
+  }
+}
@@ -15,6 +15,7 @@ package monasca.common.model.event;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonRootName;
 import monasca.common.model.alarm.AlarmState;
 import monasca.common.model.metric.MetricDefinition;
@@ -28,6 +29,12 @@ public class AlarmStateTransitionedEvent {
   public String alarmId;
   public String alarmDefinitionId;
   public List<MetricDefinition> metrics;
+  /**
+   * Ids of the metric definitions in a {@link monasca.common.model.metric.MetricDefinitionDictionary}
+   * used in place of {@link #metrics} by compacted events.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public List<String> metricIds;
   public String alarmName;
   public String alarmDescription;
   public AlarmState oldState;
@@ -99,6 +106,11 @@ public class AlarmStateTransitionedEvent {
         return false;
     } else if (!metrics.equals(other.metrics))
       return false;
+    if (metricIds == null) {
+      if (other.metricIds != null)
+        return false;
+    } else if (!metricIds.equals(other.metricIds))
+      return false;
     if (newState != other.newState)
       return false;
     if (oldState != other.oldState)
@@ -129,6 +141,7 @@ public class AlarmStateTransitionedEvent {
     result = prime * result + ((alarmId == null) ? 0 : alarmId.hashCode());
     result = prime * result + ((alarmName == null) ? 0 : alarmName.hashCode());
     result = prime * result + ((metrics == null) ? 0 : metrics.hashCode());
+    result = prime * result + ((metricIds == null) ? 0 : metricIds.hashCode());
     result = prime * result + ((newState == null) ? 0 : newState.hashCode());
     result = prime * result + ((oldState == null) ? 0 : oldState.hashCode());
     result = prime * result + ((stateChangeReason == null) ? 0 : stateChangeReason.hashCode());
@@ -140,7 +153,7 @@ public class AlarmStateTransitionedEvent {
   @Override
   public String toString() {
     return "AlarmStateTransitionedEvent [tenantId=" + tenantId + ", alarmId=" + alarmId
-        + ", alarmDefinitionId=" + alarmDefinitionId + ", metrics=" + metrics + ", alarmName="
+        + ", alarmDefinitionId=" + alarmDefinitionId + ", metrics=" + metrics + ", metricIds=" + metricIds + ", alarmName="
         + alarmName + ", alarmDescription=" + alarmDescription + ", oldState=" + oldState
         + ", newState=" + newState + ", severity=" + severity + ", actionsEnabled=" + actionsEnabled + ", stateChangeReason="
         + stateChangeReason + ", timestamp=" + timestamp + "]";
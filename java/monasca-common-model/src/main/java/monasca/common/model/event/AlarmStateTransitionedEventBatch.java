@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+import monasca.common.model.metric.MetricDefinitionDictionary;
+
+/**
+ * A batch of alarm state transitions whose metric definitions are held once in a shared
+ * dictionary, with each event referencing its metrics by id via
+ * {@link AlarmStateTransitionedEvent#metricIds}.
+ */
+@JsonRootName(value = "alarm-transitioned-batch")
+public class AlarmStateTransitionedEventBatch {
+  public MetricDefinitionDictionary metricDefinitions;
+  public List<AlarmStateTransitionedEvent> events;
+
+  public AlarmStateTransitionedEventBatch() {}
+
+  public AlarmStateTransitionedEventBatch(MetricDefinitionDictionary metricDefinitions,
+      List<AlarmStateTransitionedEvent> events) {
+    this.metricDefinitions = metricDefinitions;
+    this.events = events;
+  }
+
+  /**
+   * Returns a batch of the {@code events} with their metric definitions moved into a shared
+   * dictionary. The {@code events} are not modified.
+   */
+  public static AlarmStateTransitionedEventBatch compact(
+      Collection<AlarmStateTransitionedEvent> events) {
+    MetricDefinitionDictionary dictionary = new MetricDefinitionDictionary();
+    List<AlarmStateTransitionedEvent> compacted = new ArrayList<>(events.size());
+    for (AlarmStateTransitionedEvent event : events) {
+      AlarmStateTransitionedEvent copy = copyOf(event);
+      if (event.metrics != null) {
+        copy.metricIds = dictionary.addAll(event.metrics);
+        copy.metrics = null;
+      }
+      compacted.add(copy);
+    }
+    return new AlarmStateTransitionedEventBatch(dictionary, compacted);
+  }
+
+  /**
+   * Returns the batch's events with their metric definitions resolved from the dictionary.
+   *
+   * @throws IllegalArgumentException if an event references a metric definition that is not in the
+   *           dictionary
+   */
+  public List<AlarmStateTransitionedEvent> resolve() {
+    List<AlarmStateTransitionedEvent> resolved = new ArrayList<>(events.size());
+    for (AlarmStateTransitionedEvent event : events) {
+      AlarmStateTransitionedEvent copy = copyOf(event);
+      if (event.metricIds != null) {
+        copy.metrics = metricDefinitions.resolveAll(event.metricIds);
+        copy.metricIds = null;
+      }
+      resolved.add(copy);
+    }
+    return resolved;
+  }
+
+  private static AlarmStateTransitionedEvent copyOf(AlarmStateTransitionedEvent event) {
+    AlarmStateTransitionedEvent copy = new AlarmStateTransitionedEvent(event.tenantId,
+        event.alarmId, event.alarmDefinitionId, event.metrics, event.alarmName,
+        event.alarmDescription, event.oldState, event.newState, event.severity,
+        event.actionsEnabled, event.stateChangeReason, event.timestamp);
+    copy.metricIds = event.metricIds;
+    return copy;
+  }
+
+  @Override
+  public String toString() {
+    return "AlarmStateTransitionedEventBatch [metricDefinitions=" + metricDefinitions
+        + ", events=" + events + "]";
+  }
+}
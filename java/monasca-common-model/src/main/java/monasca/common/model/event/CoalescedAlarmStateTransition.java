@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.event;
+
+import monasca.common.model.alarm.AlarmState;
+
+/**
+ * One or more consecutive state transitions of an alarm collapsed into a single transition. The
+ * {@link #event} carries the old state of the first transition and the new state, reason and
+ * timestamp of the last.
+ */
+public class CoalescedAlarmStateTransition {
+  public final AlarmStateTransitionedEvent event;
+  /** The number of transitions that were collapsed. */
+  public final int transitionCount;
+  /** POSIX timestamp of the first collapsed transition. */
+  public final long firstTimestamp;
+
+  public CoalescedAlarmStateTransition(AlarmStateTransitionedEvent event, int transitionCount,
+      long firstTimestamp) {
+    this.event = event;
+    this.transitionCount = transitionCount;
+    this.firstTimestamp = firstTimestamp;
+  }
+
+  /**
+   * Returns whether the alarm ended up in a different state than it started in. Alarms that
+   * flapped back to their original state return false.
+   */
+  public boolean isStateChanged() {
+    return event.oldState != event.newState;
+  }
+
+  public AlarmState getOldState() {
+    return event.oldState;
+  }
+
+  public AlarmState getNewState() {
+    return event.newState;
+  }
+
+  @Override
+  public String toString() {
+    return "CoalescedAlarmStateTransition [event=" + event + ", transitionCount="
+        + transitionCount + ", firstTimestamp=" + firstTimestamp + "]";
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.event;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Publishes alarm state transitions in batches, collapsing the transitions of each alarm that occur
+ * within a flush interval into a single {@link CoalescedAlarmStateTransition}. The collapsed
+ * transition keeps the old state of the first transition and the new state of the last, so a
+ * flapping alarm produces one event per interval rather than one per evaluation.
+ */
+public class CoalescingAlarmStateTransitionPublisher {
+  private static final Logger LOG = LoggerFactory
+      .getLogger(CoalescingAlarmStateTransitionPublisher.class);
+
+  /**
+   * Receives batches of coalesced transitions.
+   */
+  public interface Sink {
+    void publish(List<CoalescedAlarmStateTransition> transitions);
+  }
+
+  /** Transitions for a single alarm accumulated during the current interval. */
+  private static class Pending {
+    final AlarmStateTransitionedEvent first;
+    AlarmStateTransitionedEvent last;
+    int count = 1;
+
+    Pending(AlarmStateTransitionedEvent first) {
+      this.first = first;
+      this.last = first;
+    }
+
+    CoalescedAlarmStateTransition coalesce() {
+      if (count == 1)
+        return new CoalescedAlarmStateTransition(first, 1, first.timestamp);
+      AlarmStateTransitionedEvent event = new AlarmStateTransitionedEvent(last.tenantId,
+          last.alarmId, last.alarmDefinitionId, last.metrics, last.alarmName,
+          last.alarmDescription, first.oldState, last.newState, last.severity,
+          last.actionsEnabled, last.stateChangeReason, last.timestamp);
+      return new CoalescedAlarmStateTransition(event, count, first.timestamp);
+    }
+  }
+
+  private final Sink sink;
+  private final long intervalMillis;
+  private Map<String, Pending> pending = new LinkedHashMap<>();
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param sink receives each non-empty batch of coalesced transitions
+   * @param intervalMillis the interval over which transitions are coalesced
+   */
+  public CoalescingAlarmStateTransitionPublisher(Sink sink, long intervalMillis) {
+    Preconditions.checkArgument(intervalMillis > 0, "intervalMillis must be > 0");
+    this.sink = Preconditions.checkNotNull(sink, "sink");
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Buffers the {@code event} to be published with the next batch.
+   */
+  public void publish(AlarmStateTransitionedEvent event) {
+    Preconditions.checkNotNull(event.alarmId, "alarmId");
+    synchronized (this) {
+      Pending alarmPending = pending.get(event.alarmId);
+      if (alarmPending == null)
+        pending.put(event.alarmId, new Pending(event));
+      else {
+        alarmPending.last = event;
+        alarmPending.count++;
+      }
+    }
+  }
+
+  /**
+   * Publishes the buffered transitions to the sink immediately, returning the number of
+   * transitions published.
+   */
+  public int flush() {
+    Map<String, Pending> batch;
+    synchronized (this) {
+      if (pending.isEmpty())
+        return 0;
+      batch = pending;
+      pending = new LinkedHashMap<>();
+    }
+
+    List<CoalescedAlarmStateTransition> transitions = new ArrayList<>(batch.size());
+    for (Pending alarmPending : batch.values())
+      transitions.add(alarmPending.coalesce());
+    sink.publish(transitions);
+    return transitions.size();
+  }
+
+  /**
+   * Starts flushing buffered transitions every interval on a background thread.
+   */
+  public synchronized void start() {
+    Preconditions.checkState(scheduler == null, "Already started");
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("alarm-transition-publisher-%s").setDaemon(true).build());
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush();
+        } catch (Exception e) {
+          LOG.error("Failed to publish alarm state transitions", e);
+        }
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background flushing and publishes any remaining buffered transitions.
+   */
+  public void stop() {
+    ScheduledExecutorService current;
+    synchronized (this) {
+      current = scheduler;
+      scheduler = null;
+    }
+    if (current != null) {
+      current.shutdown();
+      try {
+        current.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A concurrent, bounded dictionary assigning dense int ids to dimension keys and values. Ids are
+ * assigned in insertion order starting at 0 and are never reassigned. Once the dictionary holds
+ * {@code maxSize} strings, new strings are not assigned an id and {@link #encode(String)} returns
+ * {@link #NO_ID}.
+ */
+public final class DimensionDictionary {
+  /** Returned by {@link #encode(String)} for strings that could not be assigned an id. */
+  public static final int NO_ID = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final int maxSize;
+  private final ConcurrentMap<String, Integer> ids;
+  private volatile String[] strings;
+  private int size;
+
+  public DimensionDictionary(int maxSize) {
+    Preconditions.checkArgument(maxSize > 0, "maxSize must be > 0");
+    this.maxSize = maxSize;
+    this.ids = new ConcurrentHashMap<>(Math.min(maxSize, INITIAL_CAPACITY));
+    this.strings = new String[Math.min(maxSize, INITIAL_CAPACITY)];
+  }
+
+  /**
+   * Returns the id for the {@code string}, assigning one if necessary, else {@link #NO_ID} if the
+   * dictionary is full.
+   */
+  public int encode(String string) {
+    Integer id = ids.get(Preconditions.checkNotNull(string, "string"));
+    if (id != null)
+      return id;
+
+    synchronized (this) {
+      id = ids.get(string);
+      if (id != null)
+        return id;
+      if (size == maxSize)
+        return NO_ID;
+
+      String[] current = strings;
+      if (size == current.length)
+        current = strings = Arrays.copyOf(current, (int) Math.min(maxSize, 2L * current.length));
+      current[size] = string;
+      // Publishing the id after the string is stored guarantees readers of the id can decode it
+      ids.put(string, size);
+      return size++;
+    }
+  }
+
+  /**
+   * Returns the id for the {@code string} without assigning one, else {@link #NO_ID}.
+   */
+  public int lookup(String string) {
+    Integer id = ids.get(string);
+    return id == null ? NO_ID : id;
+  }
+
+  /**
+   * Returns the string for the {@code id}.
+   *
+   * @throws IllegalArgumentException if no string has been assigned the {@code id}
+   */
+  public String decode(int id) {
+    String[] current = strings;
+    String string = id >= 0 && id < current.length ? current[id] : null;
+    Preconditions.checkArgument(string != null, "Unknown dimension dictionary id %s", id);
+    return string;
+  }
+
+  /**
+   * Returns the number of strings that have been assigned an id.
+   */
+  public int size() {
+    return ids.size();
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable, memory-compact Metric whose dimension keys and values are held as ids in a shared
+ * {@link DimensionDictionary} rather than as strings. Dimensions that could not be encoded because
+ * the dictionary is full are retained as strings.
+ */
+public final class EncodedMetric {
+  private static final int[] NO_DIMENSIONS = new int[0];
+
+  private final DimensionDictionary dictionary;
+  private final String name;
+  /** Alternating key and value ids. */
+  private final int[] dimensionIds;
+  private final Map<String, String> unencodedDimensions;
+  private final long timestamp;
+  private final String value;
+  private final double[][] timeValues;
+  private final TimeSeriesBatch timeSeries;
+
+  private EncodedMetric(DimensionDictionary dictionary, String name, int[] dimensionIds,
+      Map<String, String> unencodedDimensions, long timestamp, String value,
+      double[][] timeValues, TimeSeriesBatch timeSeries) {
+    this.dictionary = dictionary;
+    this.name = name;
+    this.dimensionIds = dimensionIds;
+    this.unencodedDimensions = unencodedDimensions;
+    this.timestamp = timestamp;
+    this.value = value;
+    this.timeValues = timeValues;
+    this.timeSeries = timeSeries;
+  }
+
+  /**
+   * Returns an EncodedMetric for the {@code metric}, encoding its dimensions with the
+   * {@code dictionary}.
+   */
+  public static EncodedMetric of(Metric metric, DimensionDictionary dictionary) {
+    Preconditions.checkNotNull(metric, "metric");
+    Preconditions.checkNotNull(dictionary, "dictionary");
+
+    int[] dimensionIds = NO_DIMENSIONS;
+    Map<String, String> unencoded = null;
+    if (metric.dimensions != null && !metric.dimensions.isEmpty()) {
+      dimensionIds = new int[metric.dimensions.size() * 2];
+      int i = 0;
+      for (Map.Entry<String, String> dimension : metric.dimensions.entrySet()) {
+        int keyId = dictionary.encode(dimension.getKey());
+        int valueId = dictionary.encode(dimension.getValue());
+        if (keyId == DimensionDictionary.NO_ID || valueId == DimensionDictionary.NO_ID) {
+          if (unencoded == null)
+            unencoded = new HashMap<>();
+          unencoded.put(dimension.getKey(), dimension.getValue());
+        } else {
+          dimensionIds[i++] = keyId;
+          dimensionIds[i++] = valueId;
+        }
+      }
+      if (i < dimensionIds.length)
+        dimensionIds = Arrays.copyOf(dimensionIds, i);
+    }
+
+    return new EncodedMetric(dictionary, metric.name, dimensionIds, unencoded, metric.timestamp,
+        metric.value, metric.timeValues, metric.timeSeries);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the number of dimensions.
+   */
+  public int dimensionCount() {
+    return dimensionIds.length / 2 + (unencodedDimensions == null ? 0 : unencodedDimensions.size());
+  }
+
+  /**
+   * Returns the value of the dimension for {@code key} else null if the metric has no such
+   * dimension.
+   */
+  @Nullable
+  public String dimension(String key) {
+    int keyId = dictionary.lookup(key);
+    if (keyId != DimensionDictionary.NO_ID)
+      for (int i = 0; i < dimensionIds.length; i += 2)
+        if (dimensionIds[i] == keyId)
+          return dictionary.decode(dimensionIds[i + 1]);
+    return unencodedDimensions == null ? null : unencodedDimensions.get(key);
+  }
+
+  /**
+   * Returns the decoded dimensions.
+   */
+  public Map<String, String> dimensions() {
+    if (dimensionCount() == 0)
+      return Collections.emptyMap();
+    Map<String, String> dimensions = new HashMap<>();
+    for (int i = 0; i < dimensionIds.length; i += 2)
+      dimensions.put(dictionary.decode(dimensionIds[i]), dictionary.decode(dimensionIds[i + 1]));
+    if (unencodedDimensions != null)
+      dimensions.putAll(unencodedDimensions);
+    return dimensions;
+  }
+
+  /**
+   * Returns a Metric with decoded dimensions.
+   */
+  public Metric toMetric() {
+    Map<String, String> dimensions = dimensionCount() == 0 ? null : dimensions();
+    if (timeSeries != null)
+      return new Metric(name, dimensions, timestamp, timeSeries);
+    if (timeValues != null)
+      return new Metric(name, dimensions, timestamp, timeValues);
+    return new Metric(name, dimensions, timestamp, value);
+  }
+
+  @Override
+  public String toString() {
+    return "EncodedMetric{name='" + name + "', dimensions=" + dimensions() + ", timestamp="
+        + timestamp + ", value=" + value + '}';
+  }
+}
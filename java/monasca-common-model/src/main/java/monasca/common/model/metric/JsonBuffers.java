@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes model objects as UTF-8 JSON through per-thread reusable buffers, avoiding the
+ * intermediate String produced by {@code writeValueAsString}.
+ */
+final class JsonBuffers {
+  private static final int INITIAL_SIZE = 1024;
+  /** Buffers grown past this size are discarded after use rather than retained by the thread. */
+  private static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+  private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<Buffer>() {
+    @Override
+    protected Buffer initialValue() {
+      return new Buffer();
+    }
+  };
+
+  /** Byte array output stream exposing its internal array. */
+  private static class Buffer extends ByteArrayOutputStream {
+    Buffer() {
+      super(INITIAL_SIZE);
+    }
+
+    void writeTo(ByteBuffer target) {
+      target.put(buf, 0, count);
+    }
+
+    boolean isOversized() {
+      return buf.length > MAX_RETAINED_SIZE;
+    }
+  }
+
+  private JsonBuffers() {
+  }
+
+  /**
+   * Returns the UTF-8 JSON bytes for the {@code value}.
+   */
+  static byte[] toBytes(Object value) throws IOException {
+    Buffer buffer = acquire();
+    try {
+      write(value, buffer);
+      return buffer.toByteArray();
+    } finally {
+      release(buffer);
+    }
+  }
+
+  /**
+   * Returns the UTF-8 JSON bytes for each of the {@code values}, reusing a single buffer.
+   */
+  static List<byte[]> toBytes(Collection<?> values) throws IOException {
+    List<byte[]> result = new ArrayList<byte[]>(values.size());
+    Buffer buffer = acquire();
+    try {
+      for (Object value : values) {
+        buffer.reset();
+        write(value, buffer);
+        result.add(buffer.toByteArray());
+      }
+      return result;
+    } finally {
+      release(buffer);
+    }
+  }
+
+  /**
+   * Writes the UTF-8 JSON for the {@code value} into the {@code target}, returning the number of
+   * bytes written.
+   *
+   * @throws java.nio.BufferOverflowException if the {@code target} has insufficient space
+   */
+  static int writeTo(Object value, ByteBuffer target) throws IOException {
+    Buffer buffer = acquire();
+    try {
+      write(value, buffer);
+      buffer.writeTo(target);
+      return buffer.size();
+    } finally {
+      release(buffer);
+    }
+  }
+
+  /**
+   * Writes the UTF-8 JSON for the {@code value} to the {@code out}, leaving it open.
+   */
+  static void writeTo(Object value, OutputStream out) throws IOException {
+    write(value, out);
+  }
+
+  private static void write(Object value, OutputStream out) throws IOException {
+    JsonGenerator generator = Metrics.OBJECT_MAPPER.getFactory().createGenerator(out,
+        JsonEncoding.UTF8);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    try {
+      Metrics.OBJECT_MAPPER.writeValue(generator, value);
+    } finally {
+      generator.close();
+    }
+  }
+
+  private static Buffer acquire() {
+    Buffer buffer = BUFFERS.get();
+    buffer.reset();
+    return buffer;
+  }
+
+  private static void release(Buffer buffer) {
+    if (buffer.isOversized())
+      BUFFERS.remove();
+    else
+      buffer.reset();
+  }
+}
@@ -15,6 +15,7 @@ package monasca.common.model.metric;
 
 import java.io.Serializable;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 
@@ -35,6 +36,8 @@ public class Metric implements Serializable {
   public long timestamp;
   public String value;
   public double[][] timeValues = null;
+  @JsonIgnore
+  public TimeSeriesBatch timeSeries = null;
   private MetricDefinition definition;
 
   public Metric() {}
@@ -77,6 +80,14 @@ public class Metric implements Serializable {
     this.timeValues = Preconditions.checkNotNull(timeValues, "timeValues");
   }
 
+  public Metric(String name, @Nullable Map<String, String> dimensions, long timestamp,
+      TimeSeriesBatch timeSeries) {
+    this.name = Preconditions.checkNotNull(name, "name");
+    setDimensions(dimensions);
+    this.timestamp = timestamp;
+    this.timeSeries = Preconditions.checkNotNull(timeSeries, "timeSeries");
+  }
+
   /**
    * Returns the MetricDefinition.
    */
@@ -86,11 +97,18 @@ public class Metric implements Serializable {
     return definition;
   }
 
+  /**
+   * Returns true if the metric carries time values, either as pairs or as a columnar batch.
+   */
+  public boolean hasTimeValues() {
+    return timeValues != null || timeSeries != null;
+  }
+
   @Override
   public String toString() {
     return "Metric{" + "name='" + name + '\'' + ", dimensions=" + dimensions + ", timeStamp='"
-        + timestamp + '\'' + ", value=" + value + ", timeValues=" + Arrays.toString(timeValues)
-        + '}';
+        + timestamp + '\'' + ", value=" + value + ", timeValues="
+        + (timeSeries == null ? Arrays.toString(timeValues) : timeSeries) + '}';
   }
 
   @Override
@@ -117,7 +135,10 @@ public class Metric implements Serializable {
         return false;
     } else if (!name.equals(other.name))
       return false;
-    if (!Arrays.deepEquals(timeValues, other.timeValues))
+    if (timeSeries != null && other.timeSeries != null) {
+      if (!timeSeries.equals(other.timeSeries))
+        return false;
+    } else if (!Arrays.deepEquals(getTimeValues(), other.getTimeValues()))
       return false;
     if (timestamp != other.timestamp)
       return false;
@@ -137,10 +158,10 @@ public class Metric implements Serializable {
     result = prime * result + ((definition == null) ? 0 : definition.hashCode());
     result = prime * result + ((dimensions == null) ? 0 : dimensions.hashCode());
     result = prime * result + ((name == null) ? 0 : name.hashCode());
-    result = prime * result + Arrays.hashCode(timeValues);
+    result = prime * result + Arrays.deepHashCode(getTimeValues());
     result = prime * result + (int) (timestamp ^ (timestamp >>> 32));
     long temp;
-    temp = value.hashCode();
+    temp = value == null ? 0 : value.hashCode();
     result = prime * result + (int) (temp ^ (temp >>> 32));
     return result;
   }
@@ -177,13 +198,28 @@ public class Metric implements Serializable {
     this.value = value;
   }
 
+  /**
+   * Returns the time values as pairs, materializing them from the columnar batch if necessary.
+   */
   @JsonProperty("time_values")
   public double[][] getTimeValues() {
-    return timeValues;
+    return timeValues == null && timeSeries != null ? timeSeries.toArray() : timeValues;
   }
 
   @JsonProperty("time_values")
   public void setTimeValues(double[][] timeValues) {
     this.timeValues = timeValues;
+    this.timeSeries = null;
+  }
+
+  @JsonIgnore
+  public TimeSeriesBatch getTimeSeries() {
+    return timeSeries;
+  }
+
+  @JsonIgnore
+  public void setTimeSeries(TimeSeriesBatch timeSeries) {
+    this.timeSeries = timeSeries;
+    this.timeValues = null;
   }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A dictionary of MetricDefinitions keyed by a stable content id, allowing messages to reference
+ * metric definitions by id rather than repeating them. The id depends only on the definition's
+ * name and dimensions, so the same definition has the same id in every producer.
+ */
+public class MetricDefinitionDictionary implements Serializable {
+  private static final long serialVersionUID = 4727925466419014529L;
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  public Map<String, MetricDefinition> definitions = new LinkedHashMap<>();
+
+  public MetricDefinitionDictionary() {
+  }
+
+  /**
+   * Returns the stable content id for the {@code metricDefinition}.
+   */
+  public static String idOf(MetricDefinition metricDefinition) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    putString(hasher, metricDefinition.name);
+    if (metricDefinition.dimensions != null && !metricDefinition.dimensions.isEmpty()) {
+      for (Map.Entry<String, String> dimension : new TreeMap<>(metricDefinition.dimensions)
+          .entrySet()) {
+        putString(hasher, dimension.getKey());
+        putString(hasher, dimension.getValue());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Adds the {@code metricDefinition}, returning its id.
+   */
+  public String add(MetricDefinition metricDefinition) {
+    String id = idOf(Preconditions.checkNotNull(metricDefinition, "metricDefinition"));
+    if (!definitions.containsKey(id))
+      definitions.put(id, metricDefinition);
+    return id;
+  }
+
+  /**
+   * Adds the {@code metricDefinitions}, returning their ids in the same order.
+   */
+  public List<String> addAll(List<MetricDefinition> metricDefinitions) {
+    List<String> ids = new ArrayList<>(metricDefinitions.size());
+    for (MetricDefinition metricDefinition : metricDefinitions)
+      ids.add(add(metricDefinition));
+    return ids;
+  }
+
+  /**
+   * Returns the metric definition for the {@code id}.
+   *
+   * @throws IllegalArgumentException if the dictionary does not contain the {@code id}
+   */
+  public MetricDefinition resolve(String id) {
+    MetricDefinition metricDefinition = definitions.get(id);
+    Preconditions.checkArgument(metricDefinition != null,
+        "No metric definition found for id %s", id);
+    return metricDefinition;
+  }
+
+  /**
+   * Returns the metric definitions for the {@code ids} in the same order.
+   *
+   * @throws IllegalArgumentException if the dictionary does not contain one of the {@code ids}
+   */
+  public List<MetricDefinition> resolveAll(List<String> ids) {
+    List<MetricDefinition> metricDefinitions = new ArrayList<>(ids.size());
+    for (String id : ids)
+      metricDefinitions.add(resolve(id));
+    return metricDefinitions;
+  }
+
+  public int size() {
+    return definitions.size();
+  }
+
+  private static void putString(Hasher hasher, String value) {
+    // Length-prefix each string so that adjacent strings cannot run together
+    hasher.putInt(value.length()).putString(value, Charsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return "MetricDefinitionDictionary " + definitions;
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+
+import monasca.common.util.Exceptions;
+
+/**
+ * A lazy, read-only view over the JSON bytes of a {@link MetricEnvelope}. Fields are located by
+ * scanning the raw bytes when first accessed and only the accessed fields are materialized, which
+ * suits stages that route or filter envelopes without needing the full object. Instances are not
+ * thread-safe.
+ */
+public final class MetricEnvelopeView {
+  private static final String METRIC = "metric";
+  private static final String META = "meta";
+  private static final String DIMENSIONS = "dimensions";
+
+  private final byte[] json;
+  private String name;
+  private Map<String, String> dimensions;
+  private Map<String, Object> metaValues;
+  private MetricEnvelope envelope;
+
+  MetricEnvelopeView(byte[] json) {
+    this.json = Preconditions.checkNotNull(json, "json");
+  }
+
+  /**
+   * Returns the original bytes of the envelope, unchanged.
+   */
+  public byte[] bytes() {
+    return json;
+  }
+
+  /**
+   * Returns the metric name else null if the envelope has none.
+   */
+  @Nullable
+  public String name() {
+    if (name == null && envelope == null)
+      name = readString(METRIC, "name");
+    return envelope == null ? name : envelope.metric.name;
+  }
+
+  /**
+   * Returns the value of the dimension for {@code key} else null if the metric has no such
+   * dimension. Only the requested dimension is materialized.
+   */
+  @Nullable
+  public String dimension(String key) {
+    if (dimensions != null)
+      return dimensions.get(key);
+    if (envelope != null)
+      return envelope.metric.dimensions == null ? null : envelope.metric.dimensions.get(key);
+    return readString(METRIC, DIMENSIONS, key);
+  }
+
+  /**
+   * Returns all of the metric's dimensions, materializing them on first access.
+   */
+  public Map<String, String> dimensions() {
+    if (envelope != null)
+      return envelope.metric.dimensions == null ? Collections.<String, String>emptyMap()
+          : envelope.metric.dimensions;
+    if (dimensions == null) {
+      JsonParser parser = null;
+      try {
+        parser = seek(METRIC, DIMENSIONS);
+        Map<String, String> result = new HashMap<String, String>();
+        if (parser != null && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            parser.nextToken();
+            result.put(key, parser.getValueAsString());
+          }
+        }
+        dimensions = result;
+      } catch (IOException e) {
+        throw failure(e);
+      } finally {
+        close(parser);
+      }
+    }
+    return dimensions;
+  }
+
+  /**
+   * Returns the meta value for {@code key} else null if there is none.
+   */
+  @Nullable
+  public Object meta(String key) {
+    if (envelope != null)
+      return envelope.meta == null ? null : envelope.meta.get(key);
+    if (metaValues != null && metaValues.containsKey(key))
+      return metaValues.get(key);
+    Object value = null;
+    JsonParser parser = null;
+    try {
+      parser = seek(META, key);
+      if (parser != null && parser.getCurrentToken() != JsonToken.VALUE_NULL)
+        value = parser.readValueAs(Object.class);
+    } catch (IOException e) {
+      throw failure(e);
+    } finally {
+      close(parser);
+    }
+    if (metaValues == null)
+      metaValues = new HashMap<String, Object>();
+    metaValues.put(key, value);
+    return value;
+  }
+
+  /**
+   * Returns the tenant id from the envelope's meta else null if there is none.
+   */
+  @Nullable
+  public String tenantId() {
+    Object tenantId = meta("tenantId");
+    return tenantId == null ? null : tenantId.toString();
+  }
+
+  /**
+   * Returns the fully materialized envelope.
+   *
+   * @throws RuntimeException if an error occurs while parsing the envelope
+   */
+  public MetricEnvelope toEnvelope() {
+    if (envelope == null) {
+      envelope = MetricEnvelopes.fromJson(json);
+      name = null;
+      dimensions = null;
+      metaValues = null;
+    }
+    return envelope;
+  }
+
+  private String readString(String... path) {
+    JsonParser parser = null;
+    try {
+      parser = seek(path);
+      return parser == null ? null : parser.getValueAsString();
+    } catch (IOException e) {
+      throw failure(e);
+    } finally {
+      close(parser);
+    }
+  }
+
+  /**
+   * Returns a parser positioned at the value found by following the object field {@code path}
+   * from the root, else null if the path does not exist. Fields outside the path are skipped
+   * without being materialized.
+   */
+  private JsonParser seek(String... path) throws IOException {
+    JsonParser parser = Metrics.OBJECT_MAPPER.getFactory().createParser(json);
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      parser.close();
+      return null;
+    }
+
+    for (int depth = 0; depth < path.length;) {
+      JsonToken token = parser.nextToken();
+      if (token != JsonToken.FIELD_NAME) {
+        parser.close();
+        return null;
+      }
+
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (!path[depth].equals(field))
+        parser.skipChildren();
+      else if (++depth < path.length && value != JsonToken.START_OBJECT) {
+        parser.close();
+        return null;
+      }
+    }
+
+    return parser;
+  }
+
+  private RuntimeException failure(IOException e) {
+    return Exceptions.uncheck(e, "Failed to parse metric json: %s", new String(json));
+  }
+
+  private static void close(JsonParser parser) {
+    if (parser != null) {
+      try {
+        parser.close();
+      } catch (IOException ignore) {
+      }
+    }
+  }
+}
@@ -16,13 +16,28 @@
  */
 package monasca.common.model.metric;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
+
+import monasca.common.model.CodecInstrumentation;
 import monasca.common.util.Exceptions;
 
 /**
  * Utilities for working with MetricEnvelopes.
  */
 public final class MetricEnvelopes {
+  private static final CodecInstrumentation.Operation FROM_JSON = CodecInstrumentation.operation(
+      MetricEnvelopes.class, "fromJson");
+  private static final CodecInstrumentation.Operation TO_JSON = CodecInstrumentation.operation(
+      MetricEnvelopes.class, "toJson");
+  private static final CodecInstrumentation.Operation TO_JSON_BYTES = CodecInstrumentation
+      .operation(MetricEnvelopes.class, "toJsonBytes");
+
   private MetricEnvelopes() {
   }
 
@@ -32,23 +47,92 @@ public final class MetricEnvelopes {
    * @throws RuntimeException if an error occurs while parsing {@code metricJson}
    */
   public static MetricEnvelope fromJson(byte[] metricJson) {
+    long start = FROM_JSON.start();
     try {
       String jsonStr = new String(metricJson, "UTF-8");
-      return Metrics.OBJECT_MAPPER.readValue(jsonStr, MetricEnvelope.class);
+      MetricEnvelope envelope = Metrics.OBJECT_MAPPER.readValue(jsonStr, MetricEnvelope.class);
+      FROM_JSON.success(start, metricJson.length);
+      return envelope;
     } catch (Exception e) {
+      FROM_JSON.failure(start);
       throw Exceptions.uncheck(e, "Failed to parse metric json: %s", new String(metricJson));
     }
   }
 
+  /**
+   * Returns a lazy view of the MetricEnvelope for the {@code metricJson}. The JSON is only parsed as
+   * the view's fields are accessed.
+   */
+  public static MetricEnvelopeView viewOf(byte[] metricJson) {
+    return new MetricEnvelopeView(metricJson);
+  }
+
   /**
    * Returns the JSON representation of the {@code envelope} else null if it could not be converted
    * to JSON.
    */
   public static String toJson(MetricEnvelope envelope) {
+    long start = TO_JSON.start();
     try {
-      return Metrics.OBJECT_MAPPER.writeValueAsString(envelope);
+      String json = Metrics.OBJECT_MAPPER.writeValueAsString(envelope);
+      TO_JSON.success(start, json.length());
+      return json;
     } catch (JsonProcessingException e) {
+      TO_JSON.failure(start);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the UTF-8 JSON representation of the {@code envelope} else null if it could not be
+   * converted to JSON. The JSON is encoded through a reusable per-thread buffer.
+   */
+  public static byte[] toJsonBytes(MetricEnvelope envelope) {
+    long start = TO_JSON_BYTES.start();
+    try {
+      byte[] json = JsonBuffers.toBytes(envelope);
+      TO_JSON_BYTES.success(start, json.length);
+      return json;
+    } catch (IOException e) {
+      TO_JSON_BYTES.failure(start);
       return null;
     }
   }
+
+  /**
+   * Returns the UTF-8 JSON representation of each of the {@code envelopes}, in iteration order,
+   * encoding them all through a single reusable per-thread buffer.
+   * 
+   * @throws RuntimeException if an envelope could not be converted to JSON
+   */
+  public static List<byte[]> toJsonBytes(Collection<MetricEnvelope> envelopes) {
+    try {
+      return JsonBuffers.toBytes(envelopes);
+    } catch (IOException e) {
+      throw Exceptions.uncheck(e, "Failed to write json for %s metric envelopes", envelopes.size());
+    }
+  }
+
+  /**
+   * Writes the UTF-8 JSON representation of the {@code envelope} to the {@code out}. The
+   * {@code out} is not closed.
+   */
+  public static void writeTo(MetricEnvelope envelope, OutputStream out) throws IOException {
+    JsonBuffers.writeTo(envelope, out);
+  }
+
+  /**
+   * Writes the UTF-8 JSON representation of the {@code envelope} into the {@code buffer},
+   * returning the number of bytes written.
+   * 
+   * @throws java.nio.BufferOverflowException if the {@code buffer} has insufficient space
+   * @throws RuntimeException if the {@code envelope} could not be converted to JSON
+   */
+  public static int writeTo(MetricEnvelope envelope, ByteBuffer buffer) {
+    try {
+      return JsonBuffers.writeTo(envelope, buffer);
+    } catch (IOException e) {
+      throw Exceptions.uncheck(e, "Failed to write metric envelope json for %s", envelope.metric);
+    }
+  }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+
+import monasca.common.model.Services;
+
+/**
+ * Validates incoming metrics while they are parsed, rejecting invalid metrics before a
+ * {@link Metric} is constructed. Validates name and dimension lengths, the dimension count and the
+ * metric and dimension names supported by the metric's {@link Services#SERVICE_DIMENSION service},
+ * using lookup tables precomputed from {@link Services#INFO}.
+ * <p>
+ * Input is unescaped as by {@link Metrics#fromJson(byte[])}, so both produce the same metric for
+ * the same json.
+ */
+public final class MetricValidator {
+  public static final int DEFAULT_MAX_NAME_LENGTH = 255;
+  public static final int DEFAULT_MAX_DIMENSIONS = 16;
+  public static final int DEFAULT_MAX_DIMENSION_NAME_LENGTH = 255;
+  public static final int DEFAULT_MAX_DIMENSION_VALUE_LENGTH = 255;
+
+  /** Validator using the default limits. */
+  public static final MetricValidator DEFAULT = new MetricValidator(DEFAULT_MAX_NAME_LENGTH,
+      DEFAULT_MAX_DIMENSIONS, DEFAULT_MAX_DIMENSION_NAME_LENGTH, DEFAULT_MAX_DIMENSION_VALUE_LENGTH);
+
+  private static final Map<String, Set<String>> SUPPORTED_METRIC_NAMES;
+  private static final Map<String, Set<String>> SUPPORTED_DIMENSION_NAMES;
+
+  static {
+    Map<String, Set<String>> metricNames = new HashMap<>();
+    Map<String, Set<String>> dimensionNames = new HashMap<>();
+    for (String service : Services.INFO.keySet()) {
+      metricNames.put(service, Collections.unmodifiableSet(Services.getSupportedMetricNames(service)));
+      dimensionNames.put(service,
+          Collections.unmodifiableSet(Services.getSupportedDimensionNames(service)));
+    }
+    SUPPORTED_METRIC_NAMES = metricNames;
+    SUPPORTED_DIMENSION_NAMES = dimensionNames;
+  }
+
+  private final int maxNameLength;
+  private final int maxDimensions;
+  private final int maxDimensionNameLength;
+  private final int maxDimensionValueLength;
+
+  public MetricValidator(int maxNameLength, int maxDimensions, int maxDimensionNameLength,
+      int maxDimensionValueLength) {
+    Preconditions.checkArgument(maxNameLength > 0, "maxNameLength must be > 0");
+    Preconditions.checkArgument(maxDimensions >= 0, "maxDimensions must be >= 0");
+    Preconditions.checkArgument(maxDimensionNameLength > 0, "maxDimensionNameLength must be > 0");
+    Preconditions.checkArgument(maxDimensionValueLength > 0, "maxDimensionValueLength must be > 0");
+    this.maxNameLength = maxNameLength;
+    this.maxDimensions = maxDimensions;
+    this.maxDimensionNameLength = maxDimensionNameLength;
+    this.maxDimensionValueLength = maxDimensionValueLength;
+  }
+
+  /**
+   * Parses and validates the Metric for the {@code metricJson}. The json is first unescaped, as
+   * {@link Metrics#fromJson(byte[])} does, and the result then parsed and validated in one pass.
+   *
+   * @throws IllegalArgumentException if the {@code metricJson} is malformed or describes an invalid
+   *           metric
+   */
+  public Metric parse(byte[] metricJson) {
+    try (JsonParser parser = Metrics.OBJECT_MAPPER.getFactory().createParser(
+        StringEscapeUtils.unescapeJava(new String(metricJson, "UTF-8")))) {
+      return parse(parser);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Failed to parse metric json: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Validates the {@code metric}.
+   *
+   * @throws IllegalArgumentException if the {@code metric} is invalid
+   */
+  public void validate(Metric metric) {
+    validateName(metric.name);
+    if (metric.dimensions != null) {
+      if (metric.dimensions.size() > maxDimensions)
+        throw invalid("Metric has more than %s dimensions", maxDimensions);
+      for (Map.Entry<String, String> dimension : metric.dimensions.entrySet())
+        validateDimension(dimension.getKey(), dimension.getValue());
+    }
+    validateService(metric.name, metric.dimensions);
+  }
+
+  private Metric parse(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT)
+      throw invalid("Metric json must be an object");
+
+    String name = null;
+    Map<String, String> dimensions = null;
+    long timestamp = 0;
+    String value = null;
+    double[][] timeValues = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      switch (field) {
+        case "name":
+          name = parser.getValueAsString();
+          validateName(name);
+          break;
+        case "dimensions":
+          dimensions = parseDimensions(parser, token);
+          break;
+        case "timestamp":
+          if (!token.isNumeric())
+            throw invalid("Metric timestamp must be numeric");
+          timestamp = parser.getValueAsLong();
+          break;
+        case "value":
+          // Metrics writes values that aren't numbers as strings
+          if (token != JsonToken.VALUE_NULL && token != JsonToken.VALUE_STRING
+              && !token.isNumeric())
+            throw invalid("Metric value must be a number or string");
+          value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+          break;
+        case "time_values":
+          timeValues = parseTimeValues(parser, token);
+          break;
+        default:
+          throw invalid("Unrecognized metric field \"%s\"", field);
+      }
+    }
+
+    validateName(name);
+    validateService(name, dimensions);
+
+    Metric metric = new Metric();
+    metric.name = name;
+    metric.dimensions = dimensions;
+    metric.timestamp = timestamp;
+    metric.value = value;
+    metric.timeValues = timeValues;
+    return metric;
+  }
+
+  private Map<String, String> parseDimensions(JsonParser parser, JsonToken token)
+      throws IOException {
+    if (token == JsonToken.VALUE_NULL)
+      return null;
+    if (token != JsonToken.START_OBJECT)
+      throw invalid("Metric dimensions must be an object");
+
+    Map<String, String> dimensions = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      if (dimensions.size() == maxDimensions)
+        throw invalid("Metric has more than %s dimensions", maxDimensions);
+      String dimensionName = parser.getCurrentName();
+      if (!parser.nextToken().isScalarValue())
+        throw invalid("Dimension %s must have a scalar value", dimensionName);
+      String dimensionValue = parser.getValueAsString();
+      validateDimension(dimensionName, dimensionValue);
+      dimensions.put(dimensionName, dimensionValue);
+    }
+    return dimensions;
+  }
+
+  private double[][] parseTimeValues(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL)
+      return null;
+    if (token != JsonToken.START_ARRAY)
+      throw invalid("Metric time_values must be an array");
+
+    List<double[]> timeValues = new ArrayList<>();
+    while (parser.nextToken() == JsonToken.START_ARRAY) {
+      double[] timeValue = new double[2];
+      for (int i = 0; i < 2; i++) {
+        if (!parser.nextToken().isNumeric())
+          throw invalid("Metric time_values must contain [timestamp, value] pairs");
+        timeValue[i] = parser.getValueAsDouble();
+      }
+      if (parser.nextToken() != JsonToken.END_ARRAY)
+        throw invalid("Metric time_values must contain [timestamp, value] pairs");
+      timeValues.add(timeValue);
+    }
+    if (parser.getCurrentToken() != JsonToken.END_ARRAY)
+      throw invalid("Metric time_values must contain [timestamp, value] pairs");
+    return timeValues.toArray(new double[timeValues.size()][]);
+  }
+
+  private void validateName(String name) {
+    if (name == null || name.isEmpty())
+      throw invalid("Metric name is required");
+    if (name.length() > maxNameLength)
+      throw invalid("Metric name %s must be %s characters or less", name, maxNameLength);
+  }
+
+  private void validateDimension(String name, String value) {
+    if (name == null || name.isEmpty())
+      throw invalid("Dimension name cannot be empty");
+    if (name.length() > maxDimensionNameLength)
+      throw invalid("Dimension name %s must be %s characters or less", name,
+          maxDimensionNameLength);
+    if (value == null || value.isEmpty())
+      throw invalid("Dimension %s cannot have an empty value", name);
+    if (value.length() > maxDimensionValueLength)
+      throw invalid("Dimension %s value %s must be %s characters or less", name, value,
+          maxDimensionValueLength);
+  }
+
+  private static void validateService(String name, Map<String, String> dimensions) {
+    if (dimensions == null)
+      return;
+    String service = dimensions.get(Services.SERVICE_DIMENSION);
+    if (service == null)
+      return;
+
+    Set<String> metricNames = SUPPORTED_METRIC_NAMES.get(service);
+    if (metricNames != null && !metricNames.contains(name))
+      throw invalid("%s is not a valid metric name for service %s", name, service);
+    Set<String> dimensionNames = SUPPORTED_DIMENSION_NAMES.get(service);
+    if (dimensionNames != null)
+      for (String dimensionName : dimensions.keySet())
+        if (!Services.SERVICE_DIMENSION.equals(dimensionName)
+            && !dimensionNames.contains(dimensionName))
+          throw invalid("%s is not a valid dimension name for service %s", dimensionName, service);
+  }
+
+  private static IllegalArgumentException invalid(String msg, Object... args) {
+    return new IllegalArgumentException(String.format(msg, args));
+  }
+}
@@ -17,6 +17,8 @@
 package monasca.common.model.metric;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -28,6 +30,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import monasca.common.model.CodecInstrumentation;
 import monasca.common.util.Exceptions;
 
 /**
@@ -35,6 +39,12 @@ import monasca.common.util.Exceptions;
  */
 public final class Metrics {
   static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final CodecInstrumentation.Operation FROM_JSON = CodecInstrumentation.operation(
+      Metrics.class, "fromJson");
+  private static final CodecInstrumentation.Operation TO_JSON = CodecInstrumentation.operation(
+      Metrics.class, "toJson");
+  private static final CodecInstrumentation.Operation TO_JSON_BYTES = CodecInstrumentation
+      .operation(Metrics.class, "toJsonBytes");
 
   static {
     OBJECT_MAPPER.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
@@ -59,7 +69,17 @@ public final class Metrics {
         jgen.writeObjectField("dimensions", value.dimensions);
       jgen.writeNumberField("timestamp", value.timestamp);
 
-      if (value.timeValues == null) {
+      if (value.timeSeries != null) {
+        TimeSeriesBatch timeSeries = value.timeSeries;
+        jgen.writeArrayFieldStart("time_values");
+        for (int i = 0; i < timeSeries.size(); i++) {
+          jgen.writeStartArray();
+          jgen.writeNumber(timeSeries.timestampAt(i));
+          jgen.writeNumber(timeSeries.valueAt(i));
+          jgen.writeEndArray();
+        }
+        jgen.writeEndArray();
+      } else if (value.timeValues == null) {
     	try {
     	  double d = Double.parseDouble(value.value);
     	  jgen.writeNumberField("value", d);
@@ -90,10 +110,14 @@ public final class Metrics {
    * @throws RuntimeException if an error occurs while parsing {@code metricJson}
    */
   public static Metric fromJson(byte[] metricJson) {
+    long start = FROM_JSON.start();
     try {
       String jsonStr = StringEscapeUtils.unescapeJava(new String(metricJson, "UTF-8"));
-      return OBJECT_MAPPER.readValue(jsonStr, Metric.class);
+      Metric metric = OBJECT_MAPPER.readValue(jsonStr, Metric.class);
+      FROM_JSON.success(start, metricJson.length);
+      return metric;
     } catch (Exception e) {
+      FROM_JSON.failure(start);
       throw Exceptions.uncheck(e, "Failed to parse metric json: %s", new String(metricJson));
     }
   }
@@ -103,17 +127,62 @@ public final class Metrics {
    * JSON.
    */
   public static String toJson(Metric metric) {
+    long start = TO_JSON.start();
     try {
-      return OBJECT_MAPPER.writeValueAsString(metric);
+      String json = OBJECT_MAPPER.writeValueAsString(metric);
+      TO_JSON.success(start, json.length());
+      return json;
     } catch (JsonProcessingException e) {
+      TO_JSON.failure(start);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the UTF-8 JSON representation of the {@code metric} else null if it could not be
+   * converted to JSON. The JSON is encoded through a reusable per-thread buffer.
+   */
+  public static byte[] toJsonBytes(Metric metric) {
+    long start = TO_JSON_BYTES.start();
+    try {
+      byte[] json = JsonBuffers.toBytes(metric);
+      TO_JSON_BYTES.success(start, json.length);
+      return json;
+    } catch (IOException e) {
+      TO_JSON_BYTES.failure(start);
       return null;
     }
   }
 
+  /**
+   * Writes the UTF-8 JSON representation of the {@code metric} to the {@code out}. The {@code out}
+   * is not closed.
+   */
+  public static void writeTo(Metric metric, OutputStream out) throws IOException {
+    JsonBuffers.writeTo(metric, out);
+  }
+
+  /**
+   * Writes the UTF-8 JSON representation of the {@code metric} into the {@code buffer}, returning
+   * the number of bytes written.
+   * 
+   * @throws java.nio.BufferOverflowException if the {@code buffer} has insufficient space
+   * @throws RuntimeException if the {@code metric} could not be converted to JSON
+   */
+  public static int writeTo(Metric metric, ByteBuffer buffer) {
+    try {
+      return JsonBuffers.writeTo(metric, buffer);
+    } catch (IOException e) {
+      throw Exceptions.uncheck(e, "Failed to write metric json for %s", metric);
+    }
+  }
+
   /**
    * Returns a metric for the {@code metric} and {@code dimensions}.
    */
   public static Metric of(Metric metric, Map<String, String> dimensions) {
+    if (metric.timeSeries != null)
+      return new Metric(metric.name, dimensions, metric.timestamp, metric.timeSeries);
     return metric.timeValues == null ? new Metric(metric.name, dimensions, metric.timestamp,
         metric.value) : new Metric(metric.name, dimensions, metric.timestamp, metric.timeValues);
   }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014 Hewlett-Packard Development Company, L.P.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package monasca.common.model.metric;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Columnar batch of time/value points. Timestamps are held as longs and values as doubles in two
+ * parallel arrays, which may be shared with the caller and viewed through an offset and length.
+ */
+public final class TimeSeriesBatch implements Serializable {
+  private static final long serialVersionUID = -2405290413640826340L;
+
+  private final long[] timestamps;
+  private final double[] values;
+  private final int offset;
+  private final int length;
+
+  public TimeSeriesBatch(long[] timestamps, double[] values) {
+    this(timestamps, values, 0, Preconditions.checkNotNull(timestamps, "timestamps").length);
+  }
+
+  /**
+   * Creates a batch viewing {@code length} points of {@code timestamps} and {@code values} starting
+   * at {@code offset}. The arrays are not copied.
+   */
+  public TimeSeriesBatch(long[] timestamps, double[] values, int offset, int length) {
+    this.timestamps = Preconditions.checkNotNull(timestamps, "timestamps");
+    this.values = Preconditions.checkNotNull(values, "values");
+    Preconditions.checkArgument(offset >= 0 && length >= 0, "offset and length must be >= 0");
+    Preconditions.checkArgument(offset + length <= timestamps.length
+        && offset + length <= values.length, "offset + length exceeds the batch arrays");
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Returns a batch for the {@code timeValues} pairs.
+   */
+  public static TimeSeriesBatch of(double[][] timeValues) {
+    Preconditions.checkNotNull(timeValues, "timeValues");
+    long[] timestamps = new long[timeValues.length];
+    double[] values = new double[timeValues.length];
+    for (int i = 0; i < timeValues.length; i++) {
+      timestamps[i] = (long) timeValues[i][0];
+      values[i] = timeValues[i][1];
+    }
+    return new TimeSeriesBatch(timestamps, values);
+  }
+
+  public int size() {
+    return length;
+  }
+
+  public long timestampAt(int index) {
+    return timestamps[offset + checkIndex(index)];
+  }
+
+  public double valueAt(int index) {
+    return values[offset + checkIndex(index)];
+  }
+
+  /**
+   * Returns a view of {@code length} points of this batch starting at {@code from}.
+   */
+  public TimeSeriesBatch slice(int from, int length) {
+    Preconditions.checkArgument(from >= 0 && length >= 0 && from + length <= this.length,
+        "Invalid slice [%s, %s) of batch of size %s", from, from + length, this.length);
+    return new TimeSeriesBatch(timestamps, values, offset + from, length);
+  }
+
+  /**
+   * Returns the points of this batch as {@code [timestamp, value]} pairs.
+   */
+  public double[][] toArray() {
+    double[][] result = new double[length][];
+    for (int i = 0; i < length; i++)
+      result[i] = new double[] { timestamps[offset + i], values[offset + i] };
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof TimeSeriesBatch))
+      return false;
+    TimeSeriesBatch other = (TimeSeriesBatch) obj;
+    if (length != other.length)
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (timestamps[offset + i] != other.timestamps[other.offset + i])
+        return false;
+      if (Double.doubleToLongBits(values[offset + i]) != Double.doubleToLongBits(other.values[other.offset
+          + i]))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    for (int i = 0; i < length; i++) {
+      long timestamp = timestamps[offset + i];
+      long value = Double.doubleToLongBits(values[offset + i]);
+      result = prime * result + (int) (timestamp ^ (timestamp >>> 32));
+      result = prime * result + (int) (value ^ (value >>> 32));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "TimeSeriesBatch{timestamps="
+        + Arrays.toString(Arrays.copyOfRange(timestamps, offset, offset + length)) + ", values="
+        + Arrays.toString(Arrays.copyOfRange(values, offset, offset + length)) + '}';
+  }
+
+  private int checkIndex(int index) {
+    return Preconditions.checkElementIndex(index, length);
+  }
+}
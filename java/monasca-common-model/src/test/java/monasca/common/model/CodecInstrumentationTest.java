@@ -0,0 +1,88 @@
+package monasca.common.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import monasca.common.model.alarm.AlarmExpression;
+import monasca.common.model.alarm.AlarmSubExpression;
+import monasca.common.model.metric.Metric;
+import monasca.common.model.metric.Metrics;
+
+@Test
+public class CodecInstrumentationTest {
+  private static final String METRICS = "monasca.common.model.metric.Metrics";
+
+  @AfterMethod
+  protected void afterMethod() {
+    CodecInstrumentation.disable();
+  }
+
+  public void shouldNotRecordWhenDisabled() {
+    MetricRegistry registry = new MetricRegistry();
+    CodecInstrumentation.enable(registry);
+    CodecInstrumentation.disable();
+
+    assertFalse(CodecInstrumentation.isEnabled());
+    Metrics.toJson(new Metric("cpu", null, 123, 5));
+    assertTrue(registry.getTimers().isEmpty());
+  }
+
+  public void shouldRecordCodecs() {
+    MetricRegistry registry = new MetricRegistry();
+    CodecInstrumentation.enable(registry);
+
+    byte[] json = Metrics.toJsonBytes(new Metric("cpu", null, 123, 5));
+    Metrics.fromJson(json);
+    Metrics.fromJson(json);
+    try {
+      Metrics.fromJson("{".getBytes());
+      fail();
+    } catch (RuntimeException expected) {
+    }
+
+    assertEquals(registry.timer(METRICS + ".toJsonBytes.time").getCount(), 1);
+    assertEquals(registry.timer(METRICS + ".fromJson.time").getCount(), 2);
+    assertEquals(registry.histogram(METRICS + ".fromJson.payload-size").getSnapshot().getMax(),
+        json.length);
+    assertEquals(registry.meter(METRICS + ".fromJson.errors").getCount(), 1);
+  }
+
+  public void shouldRecordExpressionParsing() {
+    MetricRegistry registry = new MetricRegistry();
+    CodecInstrumentation.enable(registry);
+
+    AlarmExpression.of("avg(hpcs.compute{metric_name=cpu}) > 5");
+    AlarmSubExpression.of("max(hpcs.compute{metric_name=mem}) > 90");
+    try {
+      AlarmExpression.of("avg(hpcs.compute > 5");
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+
+    assertEquals(registry.timer("monasca.common.model.alarm.AlarmExpression.parse.time")
+        .getCount(), 1);
+    assertEquals(registry.timer("monasca.common.model.alarm.AlarmSubExpression.parse.time")
+        .getCount(), 1);
+    assertEquals(registry.meter("monasca.common.model.alarm.AlarmExpression.parse.errors")
+        .getCount(), 1);
+  }
+
+  public void shouldSwitchRegistries() {
+    MetricRegistry first = new MetricRegistry();
+    MetricRegistry second = new MetricRegistry();
+    CodecInstrumentation.enable(first);
+    Metrics.toJson(new Metric("cpu", null, 123, 5));
+    CodecInstrumentation.enable(second);
+    Metrics.toJson(new Metric("cpu", null, 123, 5));
+
+    assertEquals(first.timer(METRICS + ".toJson.time").getCount(), 1);
+    assertEquals(second.timer(METRICS + ".toJson.time").getCount(), 1);
+  }
+}
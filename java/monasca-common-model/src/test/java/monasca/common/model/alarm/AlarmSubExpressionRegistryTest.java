@@ -0,0 +1,76 @@
+package monasca.common.model.alarm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class AlarmSubExpressionRegistryTest {
+  private static final String CPU = "avg(cpu.idle_perc{hostname=host1}) < 10";
+  private static final String MEM = "max(mem.usable_mb{hostname=host1}) < 100";
+  private static final String DISK = "max(disk.space_used_perc{hostname=host1}) > 90";
+
+  private AlarmSubExpressionRegistry registry;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    registry = new AlarmSubExpressionRegistry();
+  }
+
+  public void shouldShareIdenticalSubExpressions() {
+    List<ImmutableAlarmSubExpression> first = registry.register("1",
+        AlarmExpression.of(CPU + " or " + MEM));
+    List<ImmutableAlarmSubExpression> second = registry.register("2",
+        AlarmExpression.of(CPU + " and " + DISK));
+
+    assertSame(second.get(0), first.get(0));
+    assertSame(registry.get(AlarmSubExpression.of(CPU)), first.get(0));
+    assertEquals(registry.size(), 3);
+    assertEquals(registry.getReferenceCount(AlarmSubExpression.of(CPU)), 2);
+    assertEquals(registry.getAlarmIds(AlarmSubExpression.of(CPU)).size(), 2);
+    assertEquals(registry.getReferenceCount(AlarmSubExpression.of(MEM)), 1);
+    assertEquals(registry.getSubExpressions("2"), second);
+  }
+
+  public void shouldReleaseUnreferencedSubExpressions() {
+    registry.register("1", AlarmExpression.of(CPU + " or " + MEM));
+    registry.register("2", AlarmExpression.of(CPU));
+
+    assertEquals(registry.unregister("1"), Arrays.asList(AlarmSubExpression.of(MEM)));
+    assertEquals(registry.getReferenceCount(AlarmSubExpression.of(CPU)), 1);
+    assertNull(registry.get(AlarmSubExpression.of(MEM)));
+
+    assertEquals(registry.unregister("2"), Arrays.asList(AlarmSubExpression.of(CPU)));
+    assertEquals(registry.size(), 0);
+    assertTrue(registry.unregister("2").isEmpty());
+  }
+
+  public void shouldReplaceSubExpressionsOnReregister() {
+    registry.register("1", AlarmExpression.of(CPU + " or " + MEM));
+    registry.register("1", AlarmExpression.of(CPU + " or " + DISK));
+
+    assertNull(registry.get(AlarmSubExpression.of(MEM)));
+    assertEquals(registry.getReferenceCount(AlarmSubExpression.of(CPU)), 1);
+    assertEquals(registry.getReferenceCount(AlarmSubExpression.of(DISK)), 1);
+    assertEquals(registry.size(), 2);
+  }
+
+  public void shouldEvaluateWithCanonicalSubExpressions() {
+    AlarmExpression expression = AlarmExpression.of(CPU + " and " + DISK);
+    List<ImmutableAlarmSubExpression> canonical = registry.register("1", expression);
+
+    Map<AlarmSubExpression, Boolean> values = new HashMap<>();
+    for (ImmutableAlarmSubExpression subExpression : canonical)
+      values.put(subExpression, true);
+    assertTrue(expression.evaluate(values));
+  }
+}
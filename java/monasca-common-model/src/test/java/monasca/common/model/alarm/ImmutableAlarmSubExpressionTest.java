@@ -0,0 +1,99 @@
+package monasca.common.model.alarm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+@Test
+public class ImmutableAlarmSubExpressionTest {
+  private static final String EXPRESSION =
+      "avg(hpcs.compute{metric_name=cpu, device=1, instance_id=5}, 1) > 5 times 3";
+
+  public void shouldBeInterchangeableWithMutableAsKey() {
+    AlarmSubExpression mutable = AlarmSubExpression.of(EXPRESSION);
+    ImmutableAlarmSubExpression immutable = ImmutableAlarmSubExpression.of(EXPRESSION);
+
+    assertEquals(immutable, mutable);
+    assertEquals(mutable, immutable);
+    assertEquals(immutable.hashCode(), mutable.hashCode());
+    assertEquals(immutable.getExpression(), mutable.getExpression());
+
+    Map<AlarmSubExpression, Boolean> values = new HashMap<>();
+    values.put(mutable, true);
+    assertTrue(values.get(immutable));
+  }
+
+  public void shouldHashNumericallyEqualThresholdsTheSame() {
+    AlarmSubExpression five = AlarmSubExpression.of("avg(hpcs.compute) > 5");
+    AlarmSubExpression fivePointZero = AlarmSubExpression.of("avg(hpcs.compute) > 5");
+    fivePointZero.setThreshold("5.0");
+
+    assertEquals(five, fivePointZero);
+    assertEquals(five.hashCode(), fivePointZero.hashCode());
+  }
+
+  public void shouldReturnSameInstanceForCopyOfImmutable() {
+    ImmutableAlarmSubExpression immutable = ImmutableAlarmSubExpression.of(EXPRESSION);
+    assertSame(ImmutableAlarmSubExpression.copyOf(immutable), immutable);
+  }
+
+  public void shouldNotShareMutableState() {
+    AlarmSubExpression mutable = AlarmSubExpression.of(EXPRESSION);
+    ImmutableAlarmSubExpression immutable = ImmutableAlarmSubExpression.copyOf(mutable);
+    mutable.getMetricDefinition().dimensions.put("device", "2");
+
+    assertEquals(immutable.getMetricDefinition().dimensions.get("device"), "1");
+  }
+
+  public void shouldNotAllowMetricDefinitionChanges() {
+    ImmutableAlarmSubExpression immutable = ImmutableAlarmSubExpression.of(EXPRESSION);
+    int hashCode = immutable.hashCode();
+    immutable.getMetricDefinition().name = "foo";
+    immutable.getMetricDefinition().dimensions = null;
+
+    assertEquals(immutable.getMetricDefinition().name, "hpcs.compute");
+    assertEquals(immutable.hashCode(), hashCode);
+    assertEquals(immutable, AlarmSubExpression.of(EXPRESSION));
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void shouldNotAllowSetters() {
+    ImmutableAlarmSubExpression.of(EXPRESSION).setThreshold(10);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void shouldNotAllowDimensionChanges() {
+    ImmutableAlarmSubExpression.of(EXPRESSION).getMetricDefinition().dimensions.put("a", "b");
+  }
+
+  public void shouldEvaluate() {
+    ImmutableAlarmSubExpression immutable = ImmutableAlarmSubExpression.of(EXPRESSION);
+    assertTrue(immutable.evaluate(6));
+    assertTrue(!immutable.evaluate(5));
+  }
+
+  public void shouldSerialize() throws Exception {
+    ImmutableAlarmSubExpression immutable = ImmutableAlarmSubExpression.of(EXPRESSION);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(immutable);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+        bytes.toByteArray()))) {
+      Object copy = in.readObject();
+      assertTrue(copy instanceof ImmutableAlarmSubExpression);
+      assertEquals(copy, immutable);
+      assertEquals(copy.hashCode(), immutable.hashCode());
+      assertEquals(copy.toString(), immutable.toString());
+    }
+  }
+}
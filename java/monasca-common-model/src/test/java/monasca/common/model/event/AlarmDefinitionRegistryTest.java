@@ -0,0 +1,125 @@
+package monasca.common.model.event;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import monasca.common.model.alarm.AlarmSubExpression;
+import monasca.common.model.event.AlarmDefinitionRegistry.SubExpression;
+import monasca.common.model.metric.MetricDefinition;
+
+@Test
+public class AlarmDefinitionRegistryTest {
+  private AlarmDefinitionRegistry registry;
+  private AlarmSubExpression cpu;
+  private AlarmSubExpression mem;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    registry = new AlarmDefinitionRegistry();
+    cpu = AlarmSubExpression.of("avg(cpu.idle_perc{hostname=h1}) < 10");
+    mem = AlarmSubExpression.of("max(mem.free_mb) < 100");
+    Map<String, AlarmSubExpression> subExpressions = new HashMap<String, AlarmSubExpression>();
+    subExpressions.put("sub-1", cpu);
+    subExpressions.put("sub-2", mem);
+    registry.apply(new AlarmDefinitionCreatedEvent("tenant", "def-1", "name", "desc",
+        "avg(cpu.idle_perc{hostname=h1}) < 10 or max(mem.free_mb) < 100", subExpressions,
+        Arrays.asList("hostname")));
+  }
+
+  public void shouldRegisterCreatedDefinition() {
+    assertEquals(registry.size(), 1);
+    assertEquals(registry.get("def-1").subExpressions.size(), 2);
+    assertEquals(registry.get("def-1").matchBy, Arrays.asList("hostname"));
+
+    List<SubExpression> matches = registry.match(new MetricDefinition("cpu.idle_perc",
+        ImmutableMap.of("hostname", "h1", "service", "compute")));
+    assertEquals(matches.size(), 1);
+    assertEquals(matches.get(0).id, "sub-1");
+    assertEquals(matches.get(0).alarmDefinitionId, "def-1");
+
+    assertTrue(registry.match(
+        new MetricDefinition("cpu.idle_perc", ImmutableMap.of("hostname", "h2"))).isEmpty());
+    assertEquals(registry.match(new MetricDefinition("mem.free_mb", null)).size(), 1);
+  }
+
+  public void shouldApplyUpdatedSubExpressions() {
+    AlarmSubExpression changed = AlarmSubExpression.of("avg(cpu.idle_perc{hostname=h1}) < 20");
+    AlarmSubExpression added = AlarmSubExpression.of("max(disk.space_used_perc) > 90");
+    registry.apply(new AlarmDefinitionUpdatedEvent("tenant", "def-1", "name", "desc",
+        "avg(cpu.idle_perc{hostname=h1}) < 20 or max(disk.space_used_perc) > 90", null, false,
+        "HIGH", Collections.singletonMap("sub-2", mem), Collections.singletonMap("sub-1", changed),
+        Collections.<String, AlarmSubExpression>emptyMap(), Collections.singletonMap("sub-3",
+            added)));
+
+    AlarmDefinitionRegistry.AlarmDefinition definition = registry.get("def-1");
+    assertEquals(definition.severity, "HIGH");
+    assertFalse(definition.actionsEnabled);
+    assertEquals(definition.subExpressions.keySet().size(), 2);
+    assertEquals(definition.subExpressions.get("sub-1"), changed);
+    assertTrue(registry.getSubExpressions("mem.free_mb").isEmpty());
+    assertEquals(registry.getSubExpressions("cpu.idle_perc").size(), 1);
+    assertEquals(registry.getSubExpressions("cpu.idle_perc").get(0).expression, changed);
+    assertEquals(registry.getSubExpressions("disk.space_used_perc").get(0).id, "sub-3");
+  }
+
+  public void shouldKeepSubExpressionsIndexedWhileUpdating() throws Exception {
+    final Map<String, AlarmSubExpression> subExpressions = Collections.singletonMap("sub-1", cpu);
+    final AtomicBoolean updating = new AtomicBoolean(true);
+    final AtomicBoolean missed = new AtomicBoolean();
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        while (updating.get())
+          if (registry.getSubExpressions("cpu.idle_perc").isEmpty())
+            missed.set(true);
+      }
+    };
+    reader.start();
+
+    for (int i = 0; i < 10000; i++)
+      registry.apply(new AlarmDefinitionCreatedEvent("tenant", "def-1", "name", "desc",
+          "avg(cpu.idle_perc{hostname=h1}) < 10", subExpressions, null));
+    updating.set(false);
+    reader.join();
+
+    assertFalse(missed.get());
+    assertEquals(registry.getSubExpressions("cpu.idle_perc").size(), 1);
+  }
+
+  public void shouldRemoveDeletedDefinitionAndAlarms() {
+    registry.addAlarm("def-1", "alarm-1");
+    registry.apply(new AlarmCreatedEvent("tenant", "alarm-2", "name", "expr", null));
+    assertTrue(registry.containsAlarm("alarm-1"));
+    assertTrue(registry.containsAlarm("alarm-2"));
+
+    registry.apply(new AlarmDefinitionDeletedEvent("def-1",
+        Collections.<String, MetricDefinition>emptyMap()));
+
+    assertNull(registry.get("def-1"));
+    assertTrue(registry.getSubExpressions("cpu.idle_perc").isEmpty());
+    assertFalse(registry.containsAlarm("alarm-1"));
+    assertTrue(registry.containsAlarm("alarm-2"));
+  }
+
+  public void shouldForgetDeletedAlarm() {
+    registry.addAlarm("def-1", "alarm-1");
+    registry.apply(new AlarmDeletedEvent("tenant", "alarm-1", null, "def-1", null));
+
+    assertFalse(registry.containsAlarm("alarm-1"));
+    assertTrue(registry.getAlarmIds("def-1").isEmpty());
+  }
+}
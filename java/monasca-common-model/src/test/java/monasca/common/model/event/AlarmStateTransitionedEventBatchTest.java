@@ -0,0 +1,71 @@
+package monasca.common.model.event;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import monasca.common.model.alarm.AlarmState;
+import monasca.common.model.metric.MetricDefinition;
+import monasca.common.model.metric.MetricDefinitionDictionary;
+import monasca.common.util.Serialization;
+
+@Test
+public class AlarmStateTransitionedEventBatchTest {
+  private final MetricDefinition host1 = new MetricDefinition("cpu.idle_perc", ImmutableMap.of(
+      "hostname", "h1", "service", "compute"));
+  private final MetricDefinition host2 = new MetricDefinition("cpu.idle_perc", ImmutableMap.of(
+      "hostname", "h2", "service", "compute"));
+
+  private AlarmStateTransitionedEvent transition(String alarmId, List<MetricDefinition> metrics) {
+    return new AlarmStateTransitionedEvent("tenant", alarmId, "def", metrics, "name", "desc",
+        AlarmState.OK, AlarmState.ALARM, "LOW", true, "reason", 123);
+  }
+
+  public void shouldComputeStableContentIds() {
+    MetricDefinition reordered = new MetricDefinition("cpu.idle_perc", ImmutableMap.of("service",
+        "compute", "hostname", "h1"));
+
+    assertEquals(MetricDefinitionDictionary.idOf(reordered), MetricDefinitionDictionary.idOf(host1));
+    assertNotEquals(MetricDefinitionDictionary.idOf(host2), MetricDefinitionDictionary.idOf(host1));
+    assertNotEquals(MetricDefinitionDictionary.idOf(new MetricDefinition("ab", null)),
+        MetricDefinitionDictionary.idOf(new MetricDefinition("a", ImmutableMap.of("b", ""))));
+  }
+
+  public void shouldCompactAndResolveEvents() {
+    List<AlarmStateTransitionedEvent> events = Arrays.asList(
+        transition("a", Arrays.asList(host1, host2)), transition("b", Arrays.asList(host2)),
+        transition("c", null));
+
+    AlarmStateTransitionedEventBatch batch = AlarmStateTransitionedEventBatch.compact(events);
+
+    assertEquals(batch.metricDefinitions.size(), 2);
+    assertNull(batch.events.get(0).metrics);
+    assertEquals(batch.events.get(1).metricIds.get(0), batch.events.get(0).metricIds.get(1));
+    assertEquals(batch.resolve(), events);
+  }
+
+  public void shouldSerializeCompactedBatch() {
+    List<AlarmStateTransitionedEvent> events = Arrays.asList(
+        transition("a", Arrays.asList(host1, host2)), transition("b", Arrays.asList(host2)));
+
+    String json = Serialization.toJson(AlarmStateTransitionedEventBatch.compact(events));
+    AlarmStateTransitionedEventBatch batch = Serialization.fromJson(json,
+        AlarmStateTransitionedEventBatch.class);
+
+    assertEquals(batch.resolve(), events);
+  }
+
+  public void shouldOmitMetricIdsFromUncompactedEvents() {
+    String json = Serialization.toJson(transition("a", Arrays.asList(host1)));
+
+    assertFalse(json.contains("metricIds"));
+  }
+}
@@ -0,0 +1,83 @@
+package monasca.common.model.event;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import monasca.common.model.alarm.AlarmState;
+
+@Test
+public class CoalescingAlarmStateTransitionPublisherTest {
+  private final List<List<CoalescedAlarmStateTransition>> batches = new ArrayList<>();
+  private CoalescingAlarmStateTransitionPublisher publisher;
+
+  @BeforeMethod
+  protected void beforeMethod() {
+    batches.clear();
+    publisher = new CoalescingAlarmStateTransitionPublisher(
+        new CoalescingAlarmStateTransitionPublisher.Sink() {
+          @Override
+          public void publish(List<CoalescedAlarmStateTransition> transitions) {
+            batches.add(transitions);
+          }
+        }, 1000);
+  }
+
+  private static AlarmStateTransitionedEvent transition(String alarmId, AlarmState oldState,
+      AlarmState newState, long timestamp) {
+    return new AlarmStateTransitionedEvent("tenant", alarmId, "def", null, "name", "desc",
+        oldState, newState, "LOW", true, "reason " + timestamp, timestamp);
+  }
+
+  public void shouldCollapseTransitionsPerAlarm() {
+    publisher.publish(transition("a", AlarmState.UNDETERMINED, AlarmState.OK, 1));
+    publisher.publish(transition("b", AlarmState.OK, AlarmState.ALARM, 2));
+    publisher.publish(transition("a", AlarmState.OK, AlarmState.ALARM, 3));
+    publisher.publish(transition("a", AlarmState.ALARM, AlarmState.OK, 4));
+    publisher.publish(transition("a", AlarmState.OK, AlarmState.ALARM, 5));
+
+    assertEquals(publisher.flush(), 2);
+    assertEquals(batches.size(), 1);
+
+    List<CoalescedAlarmStateTransition> batch = batches.get(0);
+    CoalescedAlarmStateTransition a = batch.get(0);
+    assertEquals(a.event.alarmId, "a");
+    assertEquals(a.getOldState(), AlarmState.UNDETERMINED);
+    assertEquals(a.getNewState(), AlarmState.ALARM);
+    assertEquals(a.transitionCount, 4);
+    assertEquals(a.firstTimestamp, 1);
+    assertEquals(a.event.timestamp, 5);
+    assertEquals(a.event.stateChangeReason, "reason 5");
+
+    CoalescedAlarmStateTransition b = batch.get(1);
+    assertEquals(b.transitionCount, 1);
+    assertTrue(b.isStateChanged());
+  }
+
+  public void shouldReportFlappingBackToOriginalState() {
+    publisher.publish(transition("a", AlarmState.OK, AlarmState.ALARM, 1));
+    publisher.publish(transition("a", AlarmState.ALARM, AlarmState.OK, 2));
+    publisher.flush();
+
+    assertFalse(batches.get(0).get(0).isStateChanged());
+  }
+
+  public void shouldNotPublishEmptyBatches() {
+    assertEquals(publisher.flush(), 0);
+    assertTrue(batches.isEmpty());
+  }
+
+  public void shouldFlushOnStop() {
+    publisher.start();
+    publisher.publish(transition("a", AlarmState.OK, AlarmState.ALARM, 1));
+    publisher.stop();
+
+    assertEquals(batches.size(), 1);
+  }
+}
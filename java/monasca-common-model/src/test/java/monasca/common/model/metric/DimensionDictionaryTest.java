@@ -0,0 +1,57 @@
+package monasca.common.model.metric;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+@Test
+public class DimensionDictionaryTest {
+  public void shouldAssignStableIds() {
+    DimensionDictionary dictionary = new DimensionDictionary(100);
+
+    int hostname = dictionary.encode("hostname");
+    int service = dictionary.encode("service");
+
+    assertEquals(dictionary.encode("hostname"), hostname);
+    assertEquals(dictionary.lookup("service"), service);
+    assertEquals(dictionary.decode(hostname), "hostname");
+    assertEquals(dictionary.lookup("component"), DimensionDictionary.NO_ID);
+    assertEquals(dictionary.size(), 2);
+  }
+
+  public void shouldGrowUpToMaxSize() {
+    DimensionDictionary dictionary = new DimensionDictionary(100);
+    for (int i = 0; i < 100; i++)
+      assertEquals(dictionary.encode("value-" + i), i);
+
+    assertEquals(dictionary.encode("value-100"), DimensionDictionary.NO_ID);
+    assertEquals(dictionary.decode(99), "value-99");
+    assertEquals(dictionary.size(), 100);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectUnknownId() {
+    new DimensionDictionary(10).decode(3);
+  }
+
+  public void shouldEncodeAndDecodeMetric() {
+    DimensionDictionary dictionary = new DimensionDictionary(3);
+    Map<String, String> dimensions = new HashMap<String, String>();
+    dimensions.put("hostname", "host-1");
+    dimensions.put("service", "monitoring");
+    Metric metric = new Metric("cpu.idle_perc", dimensions, 123345, 5);
+
+    EncodedMetric encoded = EncodedMetric.of(metric, dictionary);
+
+    assertEquals(encoded.dimensionCount(), 2);
+    assertEquals(encoded.dimension("hostname"), "host-1");
+    assertEquals(encoded.dimension("service"), "monitoring");
+    assertNull(encoded.dimension("component"));
+    assertEquals(encoded.dimensions(), dimensions);
+    assertEquals(encoded.toMetric(), metric);
+  }
+}
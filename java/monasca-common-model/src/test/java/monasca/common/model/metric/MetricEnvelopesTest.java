@@ -0,0 +1,76 @@
+package monasca.common.model.metric;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.testng.annotations.Test;
+
+@Test
+public class MetricEnvelopesTest {
+  private byte[] envelopeJson() throws Exception {
+    SortedMap<String, String> dimensions = new TreeMap<String, String>();
+    dimensions.put("hostname", "host-1");
+    dimensions.put("service", "monitoring");
+    Map<String, Object> meta = new HashMap<String, Object>();
+    meta.put("tenantId", "abc");
+    meta.put("region", "useast");
+    Metric metric = new Metric("cpu.idle_perc", dimensions, 123345, new double[][] { { 123, 5 } });
+    return MetricEnvelopes.toJson(new MetricEnvelope(metric, meta)).getBytes("UTF-8");
+  }
+
+  public void shouldReadFieldsFromView() throws Exception {
+    byte[] json = envelopeJson();
+    MetricEnvelopeView view = MetricEnvelopes.viewOf(json);
+
+    assertEquals(view.name(), "cpu.idle_perc");
+    assertEquals(view.dimension("hostname"), "host-1");
+    assertNull(view.dimension("component"));
+    assertEquals(view.tenantId(), "abc");
+    assertEquals(view.meta("region"), "useast");
+    assertNull(view.meta("missing"));
+    assertEquals(view.dimensions().size(), 2);
+    assertSame(view.bytes(), json);
+  }
+
+  public void shouldMaterializeEnvelopeFromView() throws Exception {
+    MetricEnvelopeView view = MetricEnvelopes.viewOf(envelopeJson());
+    MetricEnvelope envelope = view.toEnvelope();
+
+    assertEquals(envelope.metric.name, "cpu.idle_perc");
+    assertEquals(view.name(), "cpu.idle_perc");
+    assertEquals(view.dimension("service"), "monitoring");
+    assertEquals(view.tenantId(), "abc");
+  }
+
+  public void shouldHandleMissingSections() throws Exception {
+    MetricEnvelopeView view = MetricEnvelopes.viewOf("{\"creation_time\":1}".getBytes("UTF-8"));
+
+    assertNull(view.name());
+    assertNull(view.dimension("hostname"));
+    assertNull(view.tenantId());
+    assertEquals(view.dimensions().size(), 0);
+  }
+
+  public void shouldWriteEnvelopeBatch() throws Exception {
+    Map<String, Object> meta = new HashMap<String, Object>();
+    meta.put("tenantId", "abc");
+    MetricEnvelope first = new MetricEnvelope(new Metric("a", null, 1, 1), meta);
+    MetricEnvelope second = new MetricEnvelope(new Metric("b", null, 2, 2), meta);
+
+    List<byte[]> batch = MetricEnvelopes.toJsonBytes(Arrays.asList(first, second));
+
+    assertEquals(batch.size(), 2);
+    assertEquals(batch.get(0), MetricEnvelopes.toJson(first).getBytes("UTF-8"));
+    assertEquals(batch.get(1), MetricEnvelopes.toJson(second).getBytes("UTF-8"));
+    assertEquals(MetricEnvelopes.toJsonBytes(second), batch.get(1));
+    assertEquals(MetricEnvelopes.viewOf(batch.get(1)).name(), "b");
+  }
+}
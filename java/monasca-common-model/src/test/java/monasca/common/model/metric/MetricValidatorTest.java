@@ -0,0 +1,115 @@
+package monasca.common.model.metric;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.testng.annotations.Test;
+
+@Test
+public class MetricValidatorTest {
+  private static byte[] json(String json) throws Exception {
+    return json.replace('\'', '"').getBytes("UTF-8");
+  }
+
+  public void shouldParseValidMetric() throws Exception {
+    SortedMap<String, String> dimensions = new TreeMap<String, String>();
+    dimensions.put("hostname", "host-1");
+    Metric expected = new Metric("cpu.idle_perc", dimensions, 123345, 5);
+
+    Metric metric = MetricValidator.DEFAULT.parse(Metrics.toJson(expected).getBytes("UTF-8"));
+
+    assertEquals(metric.name, "cpu.idle_perc");
+    assertEquals(metric.dimensions, dimensions);
+    assertEquals(metric.timestamp, 123345);
+    assertEquals(metric.value, "5.0");
+  }
+
+  public void shouldParseTimeValues() throws Exception {
+    Metric expected = new Metric("cpu.idle_perc", null, 123345, new double[][] { { 123, 5 },
+        { 456, 6 } });
+
+    Metric metric = MetricValidator.DEFAULT.parse(Metrics.toJson(expected).getBytes("UTF-8"));
+
+    assertEquals(metric, expected);
+  }
+
+  public void shouldAcceptSupportedServiceMetric() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'dimensions':{'service':'hpcs.compute','instance_id':'1'},"
+        + "'name':'cpu_time','timestamp':1,'value':1}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectUnsupportedServiceMetricName() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'dimensions':{'service':'hpcs.compute'},"
+        + "'name':'foo','timestamp':1,'value':1}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectUnsupportedServiceDimensionName() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'name':'cpu_time','dimensions':{'hostname':'h',"
+        + "'service':'hpcs.compute'},'timestamp':1,'value':1}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectLongName() throws Exception {
+    new MetricValidator(5, 16, 255, 255).parse(json("{'name':'cpu.idle_perc','timestamp':1}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectTooManyDimensions() throws Exception {
+    new MetricValidator(255, 1, 255, 255).parse(json("{'name':'cpu','dimensions':{'a':'1','b':'2'}}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectLongDimensionValue() throws Exception {
+    new MetricValidator(255, 16, 255, 3).parse(json("{'name':'cpu','dimensions':{'a':'1234'}}"));
+  }
+
+  public void shouldUnescapeLikeMetricsFromJson() throws Exception {
+    // Json text {"name":"cpu","dimensions":{"a":"x\\ty"}} unescapes to a tab
+    byte[] metricJson = json("{'name':'cpu','dimensions':{'a':'x\\\\ty'},'timestamp':1,'value':1}");
+
+    Metric metric = MetricValidator.DEFAULT.parse(metricJson);
+
+    assertEquals(metric, Metrics.fromJson(metricJson));
+    assertEquals(metric.dimensions.get("a"), "x\ty");
+  }
+
+  public void shouldAcceptStringValueWrittenByMetrics() throws Exception {
+    Metric expected = new Metric("cpu", null, 1, "high");
+
+    Metric metric = MetricValidator.DEFAULT.parse(Metrics.toJson(expected).getBytes("UTF-8"));
+
+    assertEquals(metric.value, "high");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectBooleanValue() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'name':'cpu','timestamp':1,'value':true}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectNonScalarValue() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'name':'cpu','timestamp':1,'value':[1]}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectMissingName() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'timestamp':1,'value':1}"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldRejectMalformedJson() throws Exception {
+    MetricValidator.DEFAULT.parse(json("{'name':'cpu',"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldValidateConstructedMetric() {
+    SortedMap<String, String> dimensions = new TreeMap<String, String>();
+    dimensions.put("service", "hpcs.volume");
+    dimensions.put("hostname", "h");
+    MetricValidator.DEFAULT.validate(new Metric("foo", dimensions, 1, 1));
+  }
+}
@@ -2,7 +2,9 @@ package monasca.common.model.metric;
 
 import static org.testng.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -107,4 +109,51 @@ public class MetricsTest {
     metric = Metrics.fromJson(Metrics.toJson(expected_escaped).getBytes("UTF-8"));
     assertEquals(metric, expected_nonescaped);
   }
+
+  public void shouldSerializeTimeSeriesBatch() {
+    SortedMap<String, String> dimensions = new TreeMap<String, String>();
+    dimensions.put("metric_name", "cpu");
+    dimensions.put("device", "2");
+    dimensions.put("instance_id", "123");
+    Metric metric = new Metric("hpcs.compute", dimensions, 123345, new TimeSeriesBatch(new long[] {
+        0, 123, 456 }, new double[] { 0, 5, 6 }, 1, 2));
+
+    String json = Metrics.toJson(metric);
+    assertEquals(
+        json,
+        "{\"name\":\"hpcs.compute\",\"dimensions\":{\"device\":\"2\",\"instance_id\":\"123\",\"metric_name\":\"cpu\"},\"timestamp\":123345,\"time_values\":[[123,5.0],[456,6.0]]}");
+  }
+
+  public void shouldDeserializeTimeSeriesBatchAsEqualMetric() {
+    SortedMap<String, String> dimensions = new TreeMap<String, String>();
+    dimensions.put("instance_id", "123");
+    Metric expected = new Metric("hpcs.compute", dimensions, 123345, new TimeSeriesBatch(
+        new long[] { 1412208000000L, 1412208000001L }, new double[] { 5, 6 }));
+
+    Metric metric = Metrics.fromJson(Metrics.toJson(expected).getBytes());
+    assertEquals(metric, expected);
+    assertEquals(metric.hashCode(), expected.hashCode());
+    assertEquals(TimeSeriesBatch.of(metric.timeValues), expected.timeSeries);
+  }
+
+  public void shouldWriteJsonBytes() throws Exception {
+    SortedMap<String, String> dimensions = new TreeMap<String, String>();
+    dimensions.put("metric_name", "fo\u00f4b\u00e1r");
+    dimensions.put("instance_id", "123");
+    Metric metric = new Metric("hpcs.compute", dimensions, 123345, 5);
+    byte[] expected = Metrics.toJson(metric).getBytes("UTF-8");
+
+    assertEquals(Metrics.toJsonBytes(metric), expected);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Metrics.writeTo(metric, out);
+    assertEquals(out.toByteArray(), expected);
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    assertEquals(Metrics.writeTo(metric, buffer), expected.length);
+    buffer.flip();
+    byte[] written = new byte[buffer.remaining()];
+    buffer.get(written);
+    assertEquals(written, expected);
+  }
 }
@@ -17,6 +17,7 @@
 package monasca.common.util;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
@@ -24,11 +25,9 @@ import com.fasterxml.jackson.annotation.JsonRootName;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.InjectableValues;
-import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonSerializer;
@@ -40,8 +39,9 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.joda.ser.DateTimeSerializer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Primitives;
 
 /**
@@ -52,8 +52,30 @@ import com.google.common.primitives.Primitives;
  */
 public final class Serialization {
   private static final ObjectMapper mapper = new ObjectMapper();
-  private static final InternalObjectMapper rootMapper = new InternalObjectMapper();
-  static final Map<String, Class<?>> targetTypes = Maps.newHashMap();
+  private static final ObjectMapper rootMapper = new ObjectMapper();
+  /**
+   * Immutable registry of target types keyed by root name. Registrations replace the map under a
+   * lock so that lookups are lock-free.
+   */
+  static volatile Map<String, Class<?>> targetTypes = ImmutableMap.of();
+  private static final Object targetTypesLock = new Object();
+  private static volatile boolean targetTypesFrozen;
+  private static final ClassValue<String> rootNames = new ClassValue<String>() {
+    @Override
+    protected String computeValue(Class<?> type) {
+      JsonRootName rootName = type.getAnnotation(JsonRootName.class);
+      return rootName == null ? type.getSimpleName() : rootName.value();
+    }
+  };
+  /**
+   * Root writers for the runtime type of the objects they write, which may be a proxy. Held in a
+   * ClassValue, as are the readers, so that caching them doesn't prevent classes from unloading.
+   */
+  private static volatile ClassValue<ObjectWriter> writers = newWriters();
+  /** Root readers for the target type. */
+  private static volatile ClassValue<ObjectReader> readers = newReaders();
+  /** Readers for unwrapped values of the target type. */
+  private static volatile ClassValue<ObjectReader> valueReaders = newValueReaders();
 
   static {
     // Allow any visibility
@@ -102,32 +124,11 @@ public final class Serialization {
     @Override
     public void serialize(Object object, JsonGenerator jgen, SerializerProvider provider)
         throws IOException, JsonProcessingException {
-      Serialization.registerTarget(Types.deProxy(object.getClass()));
+      writerFor(object.getClass());
       jgen.writeObject(object);
     }
   }
 
-  static class InternalObjectMapper extends ObjectMapper {
-    private static final long serialVersionUID = 1L;
-
-    /** Reader for updating that supports proxies. */
-    @Override
-    public ObjectReader readerForUpdating(Object valueToUpdate) {
-      JavaType t = _typeFactory.constructType(Types.deProxy(valueToUpdate.getClass()));
-      return new InternalObjectReader(this, getDeserializationConfig(), t, valueToUpdate,
-          _injectableValues);
-    }
-  }
-
-  static class InternalObjectReader extends ObjectReader {
-    private static final long serialVersionUID = 1L;
-
-    protected InternalObjectReader(ObjectMapper mapper, DeserializationConfig config,
-        JavaType valueType, Object valueToUpdate, InjectableValues injectableValues) {
-      super(mapper, config, valueType, valueToUpdate, null, injectableValues);
-    }
-  }
-
   private Serialization() {
   }
 
@@ -141,15 +142,11 @@ public final class Serialization {
    * @throws RuntimeException if deserialization fails
    */
   public static <T> T fromJson(byte[] json) {
-    JsonNode node = null;
-
-    try {
-      node = mapper.readTree(json);
-    } catch (Exception e) {
-      throw Exceptions.uncheck(e, "Failed to deserialize json: {}", json);
+    try (JsonParser jsonParser = mapper.getFactory().createParser(json)) {
+      return fromJsonStream(jsonParser);
+    } catch (IOException e) {
+      throw Exceptions.uncheck(e, "Failed to deserialize json: %s", new String(json));
     }
-
-    return fromJson(node);
   }
 
   /**
@@ -173,7 +170,7 @@ public final class Serialization {
 
     if (targetType.isPrimitive() || Primitives.isWrapperType(targetType)) {
       try {
-        return rootMapper.reader(targetType).readValue(node);
+        return readerFor(targetType).readValue(node);
       } catch (IOException e) {
         throw Exceptions.uncheck(e, "Failed to deserialize json: {}", node);
       }
@@ -209,15 +206,11 @@ public final class Serialization {
    * @throws RuntimeException if deserialization fails
    */
   public static <T> T fromJson(JsonParser jsonParser) {
-    JsonNode node = null;
-
     try {
-      node = mapper.<JsonNode>readTree(jsonParser);
-    } catch (Exception e) {
-      throw Exceptions.uncheck(e, "Failed to deserialize json: {}", jsonParser);
+      return fromJsonStream(jsonParser);
+    } catch (IOException e) {
+      throw Exceptions.uncheck(e, "Failed to deserialize json: %s", jsonParser);
     }
-
-    return fromJson(node);
   }
 
   /**
@@ -230,15 +223,11 @@ public final class Serialization {
    * @throws RuntimeException if deserialization fails
    */
   public static <T> T fromJson(String json) {
-    JsonNode node = null;
-
-    try {
-      node = mapper.readTree(json);
-    } catch (Exception e) {
-      throw Exceptions.uncheck(e, "Failed to deserialize json: {}", json);
+    try (JsonParser jsonParser = mapper.getFactory().createParser(json)) {
+      return fromJsonStream(jsonParser);
+    } catch (IOException e) {
+      throw Exceptions.uncheck(e, "Failed to deserialize json: %s", json);
     }
-
-    return fromJson(node);
   }
 
   /**
@@ -248,7 +237,7 @@ public final class Serialization {
    */
   public static <T> T fromJson(String json, Class<T> targetType) {
     try {
-      return (T) rootMapper.readValue(json, targetType);
+      return readerFor(targetType).readValue(json);
     } catch (Exception e) {
       throw Exceptions.uncheck(e, "Failed to deserialize json: {}", json);
     }
@@ -262,7 +251,7 @@ public final class Serialization {
    */
   public static void injectMembers(Object object, JsonNode jsonNode) {
     try {
-      rootMapper.readerForUpdating(object).readValue(jsonNode);
+      readerFor(Types.deProxy(object.getClass())).withValueToUpdate(object).readValue(jsonNode);
     } catch (Exception e) {
       throw Exceptions.uncheck(e, "Failed to inject members with json: {}", jsonNode);
     }
@@ -271,17 +260,72 @@ public final class Serialization {
   /**
    * Registers {@code targetType} as a target for deserialization where the root key name will be
    * matched by a @JsonRootName annotation, if present, else the simple class name.
+   * 
+   * @throws IllegalStateException if the registry is frozen and the registration would change it
    */
   public static void registerTarget(Class<?> targetType) {
-    targetTypes.put(rootNameFor(targetType), targetType);
+    registerTarget(rootNameFor(targetType), targetType);
+  }
+
+  /**
+   * Registers each of the {@code targetTypes} as a target for deserialization, as with
+   * {@link #registerTarget(Class)}. Intended for registering all targets at startup, prior to
+   * {@link #freezeTargets() freezing} the registry.
+   * 
+   * @throws IllegalStateException if the registry is frozen and any registration would change it
+   */
+  public static void registerTargets(Class<?>... targetTypes) {
+    synchronized (targetTypesLock) {
+      Map<String, Class<?>> updated = new HashMap<>(Serialization.targetTypes);
+      for (Class<?> targetType : targetTypes)
+        updated.put(rootNameFor(targetType), targetType);
+      if (!updated.equals(Serialization.targetTypes)) {
+        checkNotFrozen();
+        Serialization.targetTypes = ImmutableMap.copyOf(updated);
+      }
+    }
+  }
+
+  /**
+   * Freezes the target registry. Subsequent registrations that would change the registry fail,
+   * while registrations made implicitly by {@link #toJson(Object)} are ignored.
+   */
+  public static void freezeTargets() {
+    targetTypesFrozen = true;
+  }
+
+  /**
+   * Returns whether the target registry has been frozen.
+   */
+  public static boolean isTargetsFrozen() {
+    return targetTypesFrozen;
+  }
+
+  @VisibleForTesting
+  static void unfreezeTargets() {
+    targetTypesFrozen = false;
   }
 
   /**
    * Registers {@code targetType} as a target for deserialization where the root key name will be
    * the given {@code name}.
+   * 
+   * @throws IllegalStateException if the registry is frozen and the registration would change it
    */
   public static void registerTarget(String name, Class<?> targetType) {
-    targetTypes.put(name, targetType);
+    Preconditions.checkNotNull(name, "name");
+    Preconditions.checkNotNull(targetType, "targetType");
+    if (targetType.equals(targetTypes.get(name)))
+      return;
+
+    synchronized (targetTypesLock) {
+      if (targetType.equals(targetTypes.get(name)))
+        return;
+      checkNotFrozen();
+      Map<String, Class<?>> updated = new HashMap<>(targetTypes);
+      updated.put(name, targetType);
+      targetTypes = ImmutableMap.copyOf(updated);
+    }
   }
 
   /**
@@ -304,12 +348,8 @@ public final class Serialization {
    * @throws RuntimeException if deserialization fails
    */
   public static String toJson(Object object) {
-    Class<?> unwrappedType = Types.deProxy(object.getClass());
-    registerTarget(unwrappedType);
-
     try {
-      ObjectWriter writer = rootMapper.writerWithType(unwrappedType);
-      return writer.writeValueAsString(object);
+      return writerFor(object.getClass()).writeValueAsString(object);
     } catch (Exception e) {
       throw Exceptions.uncheck(e, "Failed to serialize object: {}", object);
     }
@@ -344,8 +384,106 @@ public final class Serialization {
     }
   }
 
+  /**
+   * Reads the single-root-key json from the {@code jsonParser} without building an intermediate
+   * tree, leaving the parser positioned at the end of the root object.
+   */
+  private static <T> T fromJsonStream(JsonParser jsonParser) throws IOException {
+    if (jsonParser.getCurrentToken() == null)
+      jsonParser.nextToken();
+    if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT
+        || jsonParser.nextToken() != JsonToken.FIELD_NAME)
+      throw new IllegalArgumentException("The json must contain a single root key");
+
+    String rootKey = jsonParser.getCurrentName();
+    @SuppressWarnings("unchecked")
+    Class<T> targetType = (Class<T>) targetTypes.get(rootKey);
+    if (targetType == null)
+      throw new IllegalStateException("No target type is registered for the root key " + rootKey);
+
+    jsonParser.nextToken();
+    T result;
+    if (targetType.isPrimitive() || Primitives.isWrapperType(targetType))
+      result = valueReaderFor(targetType).readValue(jsonParser);
+    else {
+      result = Injector.getInstance(targetType);
+      valueReaderFor(Types.deProxy(result.getClass())).withValueToUpdate(result).readValue(
+          jsonParser);
+    }
+
+    if (jsonParser.nextToken() != JsonToken.END_OBJECT)
+      throw new IllegalArgumentException("The json must contain a single root key");
+    return result;
+  }
+
+  /**
+   * Returns the cached root writer for objects of the {@code type}, registering the de-proxied
+   * {@code type} as a target on first use.
+   */
+  private static ObjectWriter writerFor(Class<?> type) {
+    return writers.get(type);
+  }
+
+  /**
+   * Returns the cached root reader for the {@code type}.
+   */
+  private static ObjectReader readerFor(Class<?> type) {
+    return readers.get(type);
+  }
+
+  /**
+   * Returns the cached reader for unwrapped values of the {@code type}.
+   */
+  private static ObjectReader valueReaderFor(Class<?> type) {
+    return valueReaders.get(type);
+  }
+
+  /**
+   * Discards the cached writers and readers, which were resolved with the proxy detectors
+   * registered at the time. Called by {@link Types} when its proxy detectors change.
+   */
+  static void discardCachedCodecs() {
+    writers = newWriters();
+    readers = newReaders();
+    valueReaders = newValueReaders();
+  }
+
+  private static ClassValue<ObjectWriter> newWriters() {
+    return new ClassValue<ObjectWriter>() {
+      @Override
+      protected ObjectWriter computeValue(Class<?> type) {
+        Class<?> unwrappedType = Types.deProxy(type);
+        if (!targetTypesFrozen)
+          registerTarget(unwrappedType);
+        return rootMapper.writerWithType(unwrappedType);
+      }
+    };
+  }
+
+  private static ClassValue<ObjectReader> newReaders() {
+    return new ClassValue<ObjectReader>() {
+      @Override
+      protected ObjectReader computeValue(Class<?> type) {
+        return rootMapper.reader(type);
+      }
+    };
+  }
+
+  private static ClassValue<ObjectReader> newValueReaders() {
+    return new ClassValue<ObjectReader>() {
+      @Override
+      protected ObjectReader computeValue(Class<?> type) {
+        return readerFor(type).without(DeserializationFeature.UNWRAP_ROOT_VALUE);
+      }
+    };
+  }
+
+  private static void checkNotFrozen() {
+    if (targetTypesFrozen)
+      throw new IllegalStateException("The target registry is frozen");
+  }
+
   private static String rootNameFor(Class<?> type) {
-    JsonRootName rootName = type.getAnnotation(JsonRootName.class);
-    return rootName == null ? type.getSimpleName() : rootName.value();
+    return rootNames.get(type);
   }
 }
@@ -17,13 +17,74 @@
 package monasca.common.util;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
 
 /**
  * Utilities for working with types.
  */
 public final class Types {
+  /**
+   * Detects proxy types created by a particular proxying library.
+   */
+  public interface ProxyDetector {
+    /**
+     * Returns the type proxied by the {@code type} else null if the {@code type} is not a proxy
+     * this detector recognizes.
+     */
+    @Nullable
+    Class<?> proxiedType(Class<?> type);
+  }
+
+  /** Detects CGLib enhanced classes, including Guice's. */
+  public static final ProxyDetector CGLIB = new ProxyDetector() {
+    @Override
+    public Class<?> proxiedType(Class<?> type) {
+      return type.getName().contains("$$Enhancer") ? type.getSuperclass() : null;
+    }
+  };
+
+  /** Detects ByteBuddy generated subclasses. */
+  public static final ProxyDetector BYTE_BUDDY = new ProxyDetector() {
+    @Override
+    public Class<?> proxiedType(Class<?> type) {
+      return type.getName().contains("$ByteBuddy$") ? type.getSuperclass() : null;
+    }
+  };
+
+  /** Detects Javassist proxies, when Javassist is on the classpath. */
+  public static final ProxyDetector JAVASSIST = new ProxyDetector() {
+    @Override
+    public Class<?> proxiedType(Class<?> type) {
+      try {
+        if (JAVASSIST_IS_PROXY_CLASS_METHOD != null
+            && (Boolean) JAVASSIST_IS_PROXY_CLASS_METHOD.invoke(null, type))
+          return type.getSuperclass();
+      } catch (Exception ignore) {
+      }
+      return null;
+    }
+  };
+
+  /** Detects JDK proxies implementing a single interface, resolving them to that interface. */
+  public static final ProxyDetector JDK = new ProxyDetector() {
+    @Override
+    public Class<?> proxiedType(Class<?> type) {
+      if (Proxy.isProxyClass(type) && type.getInterfaces().length == 1)
+        return type.getInterfaces()[0];
+      return null;
+    }
+  };
+
   private static Class<?> JAVASSIST_PROXY_FACTORY_CLASS;
   private static Method JAVASSIST_IS_PROXY_CLASS_METHOD;
+  private static final List<ProxyDetector> detectors = new CopyOnWriteArrayList<ProxyDetector>();
+  private static volatile ClassValue<Class<?>> deProxied = newCache();
 
   static {
     try {
@@ -33,32 +94,73 @@ public final class Types {
           new Class<?>[] { Class.class });
     } catch (Exception ignore) {
     }
+
+    detectors.add(CGLIB);
+    detectors.add(BYTE_BUDDY);
+    detectors.add(JDK);
+    if (JAVASSIST_IS_PROXY_CLASS_METHOD != null)
+      detectors.add(JAVASSIST);
   }
 
   private Types() {
   }
 
   /**
-   * Returns the proxied type, if any, else returns the given {@code type}.
+   * Returns the proxied type, if any, else returns the given {@code type}. Results are cached per
+   * type.
    */
   @SuppressWarnings("unchecked")
   public static <T> Class<T> deProxy(Class<?> type) {
-    // Ignore JDK proxies
-    if (type.isInterface())
-      return (Class<T>) type;
+    return (Class<T>) deProxied.get(type);
+  }
 
-    // Enhanced by CGLib
-    if (type.getName().contains("$$Enhancer"))
-      return (Class<T>) type.getSuperclass();
+  /**
+   * Registers the {@code detector} to be consulted by {@link #deProxy(Class)} after the built-in
+   * detectors, discarding previously cached results, including the writers and readers cached by
+   * {@link Serialization}.
+   */
+  public static void registerProxyDetector(ProxyDetector detector) {
+    detectors.add(Preconditions.checkNotNull(detector, "detector"));
+    discardCachedResults();
+  }
 
-    // Javassist
-    try {
-      if (JAVASSIST_IS_PROXY_CLASS_METHOD != null
-          && (Boolean) JAVASSIST_IS_PROXY_CLASS_METHOD.invoke(null, type))
-        return (Class<T>) type.getSuperclass();
-    } catch (Exception ignore) {
+  /**
+   * Unregisters the {@code detector}, discarding previously cached results as with
+   * {@link #registerProxyDetector(ProxyDetector)}. Returns whether the {@code detector} was
+   * registered.
+   */
+  public static boolean unregisterProxyDetector(ProxyDetector detector) {
+    boolean removed = detectors.remove(detector);
+    if (removed)
+      discardCachedResults();
+    return removed;
+  }
+
+  private static void discardCachedResults() {
+    deProxied = newCache();
+    Serialization.discardCachedCodecs();
+  }
+
+  private static ClassValue<Class<?>> newCache() {
+    return new ClassValue<Class<?>>() {
+      @Override
+      protected Class<?> computeValue(Class<?> type) {
+        return resolve(type);
+      }
+    };
+  }
+
+  private static Class<?> resolve(Class<?> type) {
+    // Ignore interfaces
+    if (type.isInterface())
+      return type;
+
+    for (ProxyDetector detector : detectors) {
+      Class<?> proxiedType = detector.proxiedType(type);
+      if (proxiedType != null && proxiedType != type)
+        return resolve(proxiedType);
     }
 
-    return (Class<T>) type;
+    return type;
   }
 }
@@ -235,4 +235,46 @@ public class SerializationTest {
     Integer jj = Serialization.<Integer>fromJson(json);
     assertEquals(j, jj);
   }
+
+  public void shouldDeserializeFromBytes() throws Exception {
+    Serialization.registerTarget(TestCommand.class);
+    byte[] json = "{\"TestCommand\":{\"uuid\":\"123\",\"type\":1}}".getBytes("UTF-8");
+    TestCommand cmd = Serialization.fromJson(json);
+    assertEquals(cmd, new TestCommand("123", 1));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void shouldFailToDeserializeMultipleRootKeys() {
+    Serialization.registerTarget(TestCommand.class);
+    Serialization.fromJson("{\"TestCommand\":{\"uuid\":\"123\"},\"Other\":{}}");
+  }
+
+  public void shouldRegisterTargetsUpFront() {
+    Serialization.registerTargets(TestCommand.class, AnnotatedCommand.class);
+    assertEquals(Serialization.targetTypes.get("TestCommand"), TestCommand.class);
+    assertEquals(Serialization.targetTypes.get("instance-id"), AnnotatedCommand.class);
+  }
+
+  public void shouldAllowUnchangedRegistrationsWhenFrozen() {
+    Serialization.registerTargets(TestCommand.class);
+    Serialization.freezeTargets();
+    try {
+      Serialization.registerTarget(TestCommand.class);
+      String json = Serialization.toJson(new TestCommand("123", 1));
+      assertEquals(Serialization.fromJson(json), new TestCommand("123", 1));
+    } finally {
+      Serialization.unfreezeTargets();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void shouldFailToRegisterNewTargetsWhenFrozen() {
+    Serialization.registerTarget("frozen-command", TestCommand.class);
+    Serialization.freezeTargets();
+    try {
+      Serialization.registerTarget("frozen-command", AnnotatedCommand.class);
+    } finally {
+      Serialization.unfreezeTargets();
+    }
+  }
 }
@@ -2,7 +2,13 @@ package monasca.common.util;
 
 import static com.google.inject.matcher.Matchers.any;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 
 import javassist.util.proxy.ProxyFactory;
@@ -20,6 +26,19 @@ public class TypesTest {
   static class TestClass {
   }
 
+  static class CustomProxiedClass {
+  }
+
+  static class CustomProxyClass extends CustomProxiedClass {
+  }
+
+  static class CustomProxyDetector implements Types.ProxyDetector {
+    @Override
+    public Class<?> proxiedType(Class<?> type) {
+      return type == CustomProxyClass.class ? type.getSuperclass() : null;
+    }
+  }
+
   static class TestInterceptor implements MethodInterceptor {
     @Override
     public Object invoke(MethodInvocation arg0) throws Throwable {
@@ -56,4 +75,52 @@ public class TypesTest {
 
     assertEquals(Types.deProxy(proxy), ArrayList.class);
   }
+
+  public void shouldDeProxyJdkProxy() {
+    Object proxy = Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { Runnable.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return null;
+          }
+        });
+
+    assertEquals(Types.deProxy(proxy.getClass()), Runnable.class);
+  }
+
+  public void shouldNotDeProxyPlainClass() {
+    assertEquals(Types.deProxy(ArrayList.class), ArrayList.class);
+    assertEquals(Types.deProxy(Runnable.class), Runnable.class);
+  }
+
+  public void shouldDeProxyWithRegisteredDetector() {
+    assertEquals(Types.deProxy(CustomProxyClass.class), CustomProxyClass.class);
+
+    Types.ProxyDetector detector = new CustomProxyDetector();
+    Types.registerProxyDetector(detector);
+    try {
+      assertEquals(Types.deProxy(CustomProxyClass.class), CustomProxiedClass.class);
+    } finally {
+      assertTrue(Types.unregisterProxyDetector(detector));
+    }
+
+    assertEquals(Types.deProxy(CustomProxyClass.class), CustomProxyClass.class);
+    assertFalse(Types.unregisterProxyDetector(detector));
+  }
+
+  public void shouldDiscardCachedSerializationWritersWhenDetectorsChange() {
+    Serialization.toJson(new CustomProxyClass());
+    assertNull(Serialization.targetTypes.get("CustomProxiedClass"));
+
+    Types.ProxyDetector detector = new CustomProxyDetector();
+    Types.registerProxyDetector(detector);
+    try {
+      // A newly resolved writer registers the de-proxied type as a target
+      Serialization.toJson(new CustomProxyClass());
+      assertEquals(Serialization.targetTypes.get("CustomProxiedClass"), CustomProxiedClass.class);
+    } finally {
+      Types.unregisterProxyDetector(detector);
+    }
+  }
+
 }